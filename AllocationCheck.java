@@ -0,0 +1,62 @@
+package games.trial;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Checks that {@link GameWorld#step} does not allocate in steady state.
+ *
+ * Plays seeded worlds with the {@link HeadlessRunner} bot and reads the
+ * thread's allocated-bytes counter around every step. The warm-up is long
+ * enough for the JIT to settle, since recompilations can briefly allocate.
+ * Level generation is not counted (on restart, or when a step streams level
+ * chunks in or out), nor is the step that ends a run (completing splits the
+ * ground around the flag, a one-off per level).
+ * Exits with status 1 if any measured step allocated.
+ *
+ * Run with: java -cp <classes> games.trial.AllocationCheck
+ */
+public class AllocationCheck {
+    private static final int WARMUP_TICKS = 1_000_000;
+    private static final int MEASURED_TICKS = 1_000_000;
+
+    public static void main(String[] args) {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) {
+            System.out.println("per-thread allocation counters are not available on this JVM");
+            return;
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) mx;
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        GameWorld world = new GameWorld(7, GameWorld.DEFAULT_LEVEL_LENGTH);
+        InputState input = new InputState();
+        play(world, input, threads, WARMUP_TICKS); // also warms up the counter itself
+
+        long allocated = play(world, input, threads, MEASURED_TICKS);
+        System.out.printf("%d steps, %d bytes allocated (%.3f bytes/step)%n",
+                MEASURED_TICKS, allocated, allocated / (double) MEASURED_TICKS);
+        if (allocated != 0) {
+            System.out.println("FAIL: GameWorld.step allocates");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Steps the world, restarting finished runs. Returns the bytes allocated by the
+     * steps that left the world running and didn't stream chunks.
+     */
+    private static long play(GameWorld world, InputState input, com.sun.management.ThreadMXBean threads, int ticks) {
+        long bytes = 0;
+        for (int t = 0; t < ticks; t++) {
+            input.setBits(HeadlessRunner.botInput(t));
+            long streamed = world.chunksStreamed();
+            long before = threads.getCurrentThreadAllocatedBytes();
+            world.step(input);
+            long stepBytes = threads.getCurrentThreadAllocatedBytes() - before;
+            if (world.isRunning() && world.chunksStreamed() == streamed) bytes += stepBytes;
+            if (!world.isRunning()) world.restart();
+        }
+        return bytes;
+    }
+}
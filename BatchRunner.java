@@ -0,0 +1,182 @@
+package games.trial;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Plays many independent seeded worlds to the end, sharded across cores on a
+ * {@link ForkJoinPool}, and aggregates their outcomes.
+ *
+ * World {@code i} of a batch uses seed {@code baseSeed + i} and the input
+ * policy made for it by the batch's {@link PolicyFactory}. Worlds share no
+ * state, so each fork-join leaf just plays its worlds one after another and
+ * the partial {@link Stats} are merged on the way back up.
+ */
+final class BatchRunner {
+
+    /** Scripted input for one world: the buttons to hold on the given step. */
+    interface Policy {
+        int buttons(GameWorld world, long tick);
+    }
+
+    /** Makes the policy of world {@code index}; policies may keep per-world state. */
+    interface PolicyFactory {
+        Policy create(int index);
+    }
+
+    /** Runs right and jumps on a fixed rhythm (the {@link HeadlessRunner} bot). */
+    static final PolicyFactory RUN_AND_JUMP = index -> (world, tick) -> HeadlessRunner.botInput(tick);
+
+    /** Aggregated outcome of a set of playthroughs. */
+    static final class Stats {
+        int worlds;
+        int completed;
+        long ticks;
+        long totalScore;
+        int minScore = Integer.MAX_VALUE;
+        int maxScore = Integer.MIN_VALUE;
+        long livesLost;
+
+        void add(GameWorld world, int livesAtStart, long steps) {
+            worlds++;
+            if (world.isCompleted()) completed++;
+            ticks += steps;
+            totalScore += world.score();
+            minScore = Math.min(minScore, world.score());
+            maxScore = Math.max(maxScore, world.score());
+            livesLost += livesAtStart - world.lives();
+        }
+
+        Stats merge(Stats o) {
+            worlds += o.worlds;
+            completed += o.completed;
+            ticks += o.ticks;
+            totalScore += o.totalScore;
+            minScore = Math.min(minScore, o.minScore);
+            maxScore = Math.max(maxScore, o.maxScore);
+            livesLost += o.livesLost;
+            return this;
+        }
+
+        double completionRate() {
+            return worlds == 0 ? 0 : completed / (double) worlds;
+        }
+
+        double meanScore() {
+            return worlds == 0 ? 0 : totalScore / (double) worlds;
+        }
+
+        double meanLivesLost() {
+            return worlds == 0 ? 0 : livesLost / (double) worlds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d worlds, %.1f%% completed, score mean %.0f [%d, %d], lives lost mean %.2f, %d ticks",
+                    worlds, completionRate() * 100, meanScore(), minScore, maxScore, meanLivesLost(), ticks);
+        }
+    }
+
+    private static final int LEAF_WORLDS = 4; // worlds played sequentially by one task
+
+    private final long baseSeed;
+    private final int levelLength;
+    private final long maxTicks;
+    private final PolicyFactory policies;
+
+    /**
+     * @param maxTicks a playthrough still running after this many steps is
+     *                 stopped and counted as not completed
+     */
+    BatchRunner(long baseSeed, int levelLength, long maxTicks, PolicyFactory policies) {
+        this.baseSeed = baseSeed;
+        this.levelLength = levelLength;
+        this.maxTicks = maxTicks;
+        this.policies = policies;
+    }
+
+    /** Plays worlds {@code [0, count)} on the given pool. */
+    Stats run(ForkJoinPool pool, int count) {
+        return pool.invoke(new Shard(0, count));
+    }
+
+    /**
+     * Plays world {@code index} to the end on the calling thread. Throws
+     * IllegalStateException if the run completes within its first step.
+     */
+    Stats play(int index, Stats into) {
+        GameWorld world = new GameWorld(baseSeed + index, levelLength);
+        Policy policy = policies.create(index);
+        InputState input = new InputState();
+        int livesAtStart = world.lives();
+        long tick = 0;
+        while (world.isRunning() && tick < maxTicks) {
+            input.setBits(policy.buttons(world, tick));
+            world.step(input);
+            tick++;
+        }
+        // the player has to do something to complete: a run over by its first step means a broken completion rule
+        if (world.isCompleted() && tick <= 1) {
+            throw new IllegalStateException("world " + index + " (seed " + (baseSeed + index) + ") completed at step " + tick);
+        }
+        into.add(world, livesAtStart, tick);
+        return into;
+    }
+
+    private final class Shard extends RecursiveTask<Stats> {
+        private final int from, to;
+
+        Shard(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Stats compute() {
+            if (to - from <= LEAF_WORLDS) {
+                Stats stats = new Stats();
+                for (int i = from; i < to; i++) {
+                    play(i, stats);
+                }
+                return stats;
+            }
+            int mid = (from + to) >>> 1;
+            Shard left = new Shard(from, mid);
+            left.fork();
+            Stats right = new Shard(mid, to).compute();
+            return right.merge(left.join());
+        }
+    }
+
+    /**
+     * Scaling benchmark: plays the same batch with 1, 2, 4, ... up to all cores
+     * and prints throughput and speed-up.
+     *
+     * Run with: java -cp <classes> games.trial.BatchRunner [worlds]
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int cores = Runtime.getRuntime().availableProcessors();
+        BatchRunner runner = new BatchRunner(1, GameWorld.DEFAULT_LEVEL_LENGTH, 20_000, RUN_AND_JUMP);
+
+        ForkJoinPool warm = new ForkJoinPool(cores);
+        runner.run(warm, count); // warm-up
+        warm.shutdown();
+
+        System.out.printf("%8s %10s %14s %9s%n", "threads", "seconds", "ticks/s", "speed-up");
+        double base = 0;
+        Stats stats = null;
+        for (int threads = 1; ; threads = Math.min(cores, threads * 2)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long t0 = System.nanoTime();
+            stats = runner.run(pool, count);
+            double elapsed = (System.nanoTime() - t0) / 1e9;
+            pool.shutdown();
+            double rate = stats.ticks / elapsed;
+            if (threads == 1) base = rate;
+            System.out.printf("%8d %10.2f %14.0f %8.2fx%n", threads, elapsed, rate, rate / base);
+            if (threads == cores) break;
+        }
+        System.out.println(stats);
+    }
+}
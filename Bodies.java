@@ -0,0 +1,67 @@
+package games.trial;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for dynamic bodies: boxes with a velocity that
+ * fall under gravity and stop at platforms, stepped all together by a
+ * {@link PhysicsStage}. Like {@link EntityStore}, every attribute is a
+ * parallel primitive array indexed by a dense id in {@code [0, size())}.
+ *
+ * {@code contacts} holds the {@link #ON_GROUND}, {@link #HIT_WALL} and
+ * {@link #HIT_CEILING} bits of the body's last move.
+ */
+final class Bodies {
+    static final int ON_GROUND = 1;   // landed on top of a platform
+    static final int HIT_WALL = 2;    // stopped by the side of a platform
+    static final int HIT_CEILING = 4; // bumped into a platform from below
+
+    int[] x, y, w, h;
+    double[] vx, vy;
+    int[] contacts;
+    private int size;
+
+    Bodies(int capacity) {
+        int n = Math.max(1, capacity);
+        x = new int[n];
+        y = new int[n];
+        w = new int[n];
+        h = new int[n];
+        vx = new double[n];
+        vy = new double[n];
+        contacts = new int[n];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /** Adds a body at rest; returns its id. */
+    int add(int bx, int by, int bw, int bh) {
+        if (size == x.length) grow();
+        int id = size++;
+        x[id] = bx;
+        y[id] = by;
+        w[id] = bw;
+        h[id] = bh;
+        vx[id] = 0;
+        vy[id] = 0;
+        contacts[id] = 0;
+        return id;
+    }
+
+    private void grow() {
+        int n = x.length * 2;
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        w = Arrays.copyOf(w, n);
+        h = Arrays.copyOf(h, n);
+        vx = Arrays.copyOf(vx, n);
+        vy = Arrays.copyOf(vy, n);
+        contacts = Arrays.copyOf(contacts, n);
+    }
+}
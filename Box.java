@@ -0,0 +1,28 @@
+package games.trial;
+
+/**
+ * Mutable axis-aligned box in world pixels. Plays the role of
+ * {@code java.awt.Rectangle} in the simulation, which must not depend on AWT.
+ */
+final class Box {
+    int x, y, width, height;
+
+    Box(int x, int y, int width, int height) {
+        this.x = x;
+        this.y = y;
+        this.width = width;
+        this.height = height;
+    }
+
+    /** Same rule as {@code Rectangle.intersects}: the interiors overlap. */
+    boolean intersects(Box o) {
+        return x < o.x + o.width && o.x < x + width
+                && y < o.y + o.height && o.y < y + height;
+    }
+
+    /** Same as {@link #intersects(Box)} for a box given by its fields. */
+    boolean intersects(int ox, int oy, int ow, int oh) {
+        return x < ox + ow && ox < x + width
+                && y < oy + oh && oy < y + height;
+    }
+}
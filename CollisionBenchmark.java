@@ -0,0 +1,88 @@
+package games.trial;
+
+/**
+ * Standalone benchmark for the per-tick cost of {@link GameWorld#step}
+ * as the level grows. Each length plays the level {@code new GameWorld(42, length)}
+ * would, with its flag moved to the far end so one run can cover all of it.
+ * The {@link HeadlessRunner} bot plays (run right, jump on a rhythm), and a
+ * probe sweeping the level once over the measured ticks pulls the player
+ * forward whenever deaths leave it behind. So the broad phase is queried all
+ * along the level, with chunks streaming, banknotes picked up and enemies
+ * met. Outside the timed steps, a game over goes back to a snapshot taken
+ * with full lives a little earlier, rather than to the start of the level,
+ * and a completed run restarts.
+ * With the broad-phase grid, platform, coin and stomp checks only look at
+ * objects near the player, so the time per tick should stay flat from 10k to
+ * 1M px; the farthest x the player reached shows the whole level was crossed.
+ *
+ * Run with: java -cp <classes> games.trial.CollisionBenchmark
+ */
+public class CollisionBenchmark {
+    private static final int[] LEVEL_LENGTHS = {10_000, 100_000, 1_000_000};
+    private static final int WARMUP_TICKS = 200_000;
+    private static final int MEASURED_TICKS = 500_000;
+    private static final int FLAG_MARGIN = 1200; // flag this far before the level end, on the last ground
+    private static final int SNAPSHOT_TICKS = 1000; // how often to keep a point to resume from after a game over
+
+    public static void main(String[] args) {
+        System.out.printf("%12s %10s %10s %10s %10s %12s %12s%n", "level px", "platforms", "coins", "enemies",
+                "run ends", "farthest x", "ns/tick");
+        for (int length : LEVEL_LENGTHS) {
+            LevelFile level = wholeLevel(42, length);
+            GameWorld game = new GameWorld(level);
+            runTicks(game, level, WARMUP_TICKS, new long[2]);
+            long[] progress = new long[2]; // runs ended, farthest x
+            long elapsed = runTicks(game, level, MEASURED_TICKS, progress);
+            System.out.printf("%12d %10d %10d %10d %10d %12d %12.1f%n", length,
+                    game.platformCount(), game.coinCount(), game.enemyCount(), progress[0], progress[1],
+                    elapsed / (double) MEASURED_TICKS);
+        }
+    }
+
+    /** The first level of {@code new GameWorld(seed, length)}, with the flag at its far end. */
+    private static LevelFile wholeLevel(long seed, int length) {
+        LevelStreamer generated = GameWorld.firstLevel(seed, length, GameWorld.DEFAULT_ENEMY_DENSITY);
+        LevelFile.Builder b = new LevelFile.Builder(generated.levelEnd(), generated.levelEnd() - FLAG_MARGIN,
+                generated.chunkCount());
+        for (int c = 0; c < generated.chunkCount(); c++) generated.generate(c, b);
+        return b.build();
+    }
+
+    /**
+     * Steps the world with the bot, pulling the player up to a probe that
+     * reaches the flag on the last tick; returns the nanoseconds spent in the
+     * steps, snapshots, resumes and restarts excluded. Adds the runs that
+     * ended to {@code progress[0]} and keeps the farthest player x in
+     * {@code progress[1]}.
+     */
+    private static long runTicks(GameWorld game, LevelFile level, int ticks, long[] progress) {
+        InputState input = new InputState();
+        long span = level.flagX - GameWorld.SPAWN_X;
+        GameWorld.Snapshot resume = game.snapshot();
+        long elapsed = 0;
+        long t0 = System.nanoTime();
+        for (int i = 0; i < ticks; i++) {
+            int probe = GameWorld.SPAWN_X + (int) (span * i / ticks);
+            if (game.player().x < probe) game.placePlayer(probe);
+            input.setBits(HeadlessRunner.botInput(i));
+            game.step(input);
+            progress[1] = Math.max(progress[1], game.player().x);
+            boolean ended = !game.isRunning();
+            if (ended || (i % SNAPSHOT_TICKS == 0 && game.lives() == 2)) {
+                long t1 = System.nanoTime();
+                elapsed += t1 - t0;
+                if (!ended) {
+                    resume = game.snapshot();
+                } else if (game.isCompleted()) {
+                    game.restart();
+                    resume = game.snapshot();
+                } else {
+                    game.restore(resume);
+                }
+                if (ended) progress[0]++;
+                t0 = System.nanoTime();
+            }
+        }
+        return elapsed + System.nanoTime() - t0;
+    }
+}
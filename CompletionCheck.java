@@ -0,0 +1,125 @@
+package games.trial;
+
+/**
+ * Checks that a run only completes by something the player did.
+ *
+ * The "max achievable == 5000" rule must count the whole level, not just the
+ * chunks streamed in around the view: seed 19, whose first chunks alone add
+ * up to 5000, must not complete on its first step. What is left to take
+ * counts every chunk generated so far, and streaming a chunk out must not
+ * change it, nor end the run. A {@link GameEnv}
+ * episode on seed 19 must not end (with the completion bonus) on a no-op
+ * action, nor be completed by idling. Then plays a range
+ * of seeds with the {@link HeadlessRunner} bot and fails if any run completes
+ * within its first step.
+ * Exits with status 1 if any check fails.
+ *
+ * Run with: java -cp <classes> games.trial.CompletionCheck [seeds]
+ */
+public class CompletionCheck {
+    private static final int MAX_TICKS = 20_000;
+    private static int failures;
+
+    public static void main(String[] args) {
+        int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+
+        GameWorld world = new GameWorld(19, GameWorld.DEFAULT_LEVEL_LENGTH);
+        world.step(new InputState());
+        check(world.isRunning() && !world.isCompleted(), "seed 19 completes on its first step");
+        checkEviction();
+        checkIdleEpisode();
+
+        InputState input = new InputState();
+        int completed = 0;
+        for (long seed = 0; seed < seeds; seed++) {
+            world = new GameWorld(seed, GameWorld.DEFAULT_LEVEL_LENGTH);
+            int ticks = 0;
+            while (world.isRunning() && ticks < MAX_TICKS) {
+                input.setBits(HeadlessRunner.botInput(ticks));
+                world.step(input);
+                ticks++;
+            }
+            if (!world.isCompleted()) continue;
+            completed++;
+            check(ticks > 1, "seed " + seed + " completes at step " + ticks + " with score " + world.score());
+        }
+        System.out.printf("%d seeds played, %d completed%n", seeds, completed);
+        if (failures > 0) {
+            System.out.println("FAIL: " + failures + " checks failed");
+            System.exit(1);
+        }
+        System.out.println("OK");
+    }
+
+    /**
+     * Plays seeds with the bot until a step drops a chunk with entities on it
+     * (resident entities go down while nothing is taken), checking that score
+     * plus what is left always equals the points of the chunks generated so
+     * far, and that the run goes on through the drop.
+     */
+    private static void checkEviction() {
+        InputState input = new InputState();
+        int evictions = 0;
+        for (long seed = 0; seed < 50 && evictions == 0; seed++) {
+            GameWorld world = new GameWorld(seed, GameWorld.DEFAULT_LEVEL_LENGTH);
+            LevelStreamer level = GameWorld.firstLevel(seed, GameWorld.DEFAULT_LEVEL_LENGTH,
+                    GameWorld.DEFAULT_ENEMY_DENSITY);
+            for (int t = 0; t < MAX_TICKS && world.isRunning(); t++) {
+                long streamed = world.chunksStreamed();
+                int resident = world.coinCount() + world.enemyCount();
+                int score = world.score();
+                input.setBits(HeadlessRunner.botInput(t));
+                world.step(input);
+                int max = points(level, world.chunksCounted());
+                check(world.maxAchievable() == max, "seed " + seed + " step " + t + ": max achievable "
+                        + world.maxAchievable() + ", the chunks generated hold " + max);
+                boolean evicted = world.chunksStreamed() != streamed && world.score() == score
+                        && world.coinCount() + world.enemyCount() < resident;
+                if (!evicted) continue;
+                evictions++;
+                check(world.isRunning() || world.metersTraveled() >= 100,
+                        "seed " + seed + " step " + t + ": the run ended when a chunk was dropped");
+            }
+        }
+        check(evictions > 0, "no chunk with entities was ever dropped");
+    }
+
+    /** Points on the banknotes and enemies of the first {@code chunks} chunks of {@code level}. */
+    private static int points(LevelSource level, int chunks) {
+        int[] points = new int[1];
+        LevelSource.Sink counter = new LevelSource.Sink() {
+            @Override
+            public void platform(int x, int y, int w, int h) {
+            }
+
+            @Override
+            public void coin(int ordinal, int x, int y, int w, int h) {
+                points[0] += ScoreLedger.COIN_VALUE;
+            }
+
+            @Override
+            public void enemy(int ordinal, int x, int y, int w, int h, int left, int right) {
+                points[0] += ScoreLedger.ENEMY_VALUE;
+            }
+        };
+        for (int c = 0; c < chunks; c++) level.generate(c, counter);
+        return points[0];
+    }
+
+    /** A no-op agent on seed 19 gets neither {@code done} nor the completion bonus. */
+    private static void checkIdleEpisode() {
+        GameEnv env = new GameEnv();
+        env.reset(19);
+        double reward = env.step(0);
+        check(!env.isDone(), "a no-op action on seed 19 ends the episode");
+        check(reward < GameEnv.COMPLETION_BONUS, "a no-op action on seed 19 earns " + reward);
+        for (int t = 1; t < 600 && !env.isDone(); t++) env.step(0);
+        check(!env.world().isCompleted(), "idling on seed 19 completes the level");
+    }
+
+    private static void check(boolean ok, String what) {
+        if (ok) return;
+        failures++;
+        System.out.println("FAIL: " + what);
+    }
+}
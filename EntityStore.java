@@ -0,0 +1,322 @@
+package games.trial;
+
+import java.util.Arrays;
+
+/**
+ * Structure-of-arrays storage for small moving entities (enemies, banknotes).
+ *
+ * Every attribute is a parallel primitive array indexed by a dense id in
+ * {@code [0, size())}, so the per-tick loops walk flat arrays instead of
+ * chasing one heap object per entity. A patrolling entity moves between
+ * {@code left} and {@code right} at {@code speed} px per step; a static one
+ * has {@code left == right == x} and speed 0. {@code tag} is an opaque value
+ * chosen by the owner (e.g. where the entity came from).
+ *
+ * Removal is deferred: {@link #kill} clears the entity's alive bit and
+ * {@link #removeKilled} later swap-removes all of them at once, keeping a
+ * {@link SpatialGrid} of the entities' spans in sync.
+ *
+ * Patrols only need stepping where someone is looking: {@link #updatePatrols(IntList)}
+ * steps the given entities and lets the others fall behind. A patrol at
+ * constant speed is periodic, so a dormant entity is caught up in closed form
+ * the next time it is stepped, landing exactly where stepping it every time
+ * would have.
+ *
+ * {@link #snapshot} is copy-on-write: the snapshot shares the arrays, and
+ * this store copies them on its next write. Callers writing the arrays
+ * directly must call {@link #beginWrite} first.
+ */
+final class EntityStore {
+    int[] x, y, w, h;
+    int[] left, right, dir, speed;
+    int[] prevX; // x at the start of the last step, for interpolated drawing
+    int[] tag;
+    private int[] clock; // step of the store at which x and dir are current
+    private int now;     // steps taken by the store so far
+    private long[] alive;
+    private int size;
+    private int killed;
+    private boolean shared; // the arrays are also referenced by a snapshot
+
+    EntityStore(int capacity) {
+        allocate(Math.max(1, capacity));
+    }
+
+    private EntityStore() {
+    }
+
+    private void allocate(int n) {
+        x = new int[n];
+        y = new int[n];
+        w = new int[n];
+        h = new int[n];
+        left = new int[n];
+        right = new int[n];
+        dir = new int[n];
+        speed = new int[n];
+        prevX = new int[n];
+        tag = new int[n];
+        clock = new int[n];
+        alive = new long[(n + 63) >>> 6];
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        beginWrite();
+        size = 0;
+        killed = 0;
+        Arrays.fill(alive, 0);
+    }
+
+    /** Adds a static entity; returns its id. */
+    int add(int ex, int ey, int ew, int eh, int entityTag) {
+        return add(ex, ey, ew, eh, ex, ex, 0, entityTag);
+    }
+
+    /** Adds an entity patrolling {@code [minX, maxX]}, initially moving right; returns its id. */
+    int add(int ex, int ey, int ew, int eh, int minX, int maxX, int pxPerStep, int entityTag) {
+        beginWrite();
+        if (size == x.length) grow();
+        int id = size++;
+        x[id] = ex;
+        y[id] = ey;
+        w[id] = ew;
+        h[id] = eh;
+        left[id] = minX;
+        right[id] = maxX;
+        dir[id] = 1;
+        speed[id] = pxPerStep;
+        prevX[id] = ex;
+        tag[id] = entityTag;
+        clock[id] = now;
+        alive[id >>> 6] |= 1L << id;
+        return id;
+    }
+
+    private void grow() {
+        int n = x.length * 2;
+        x = Arrays.copyOf(x, n);
+        y = Arrays.copyOf(y, n);
+        w = Arrays.copyOf(w, n);
+        h = Arrays.copyOf(h, n);
+        left = Arrays.copyOf(left, n);
+        right = Arrays.copyOf(right, n);
+        dir = Arrays.copyOf(dir, n);
+        speed = Arrays.copyOf(speed, n);
+        prevX = Arrays.copyOf(prevX, n);
+        tag = Arrays.copyOf(tag, n);
+        clock = Arrays.copyOf(clock, n);
+        alive = Arrays.copyOf(alive, (n + 63) >>> 6);
+    }
+
+    /**
+     * Returns a frozen copy of the current contents that shares this store's
+     * arrays; this store copies them before its next write. The copy must not
+     * be written, only read or passed to {@link #copyFrom}.
+     */
+    EntityStore snapshot() {
+        EntityStore s = new EntityStore();
+        s.x = x;
+        s.y = y;
+        s.w = w;
+        s.h = h;
+        s.left = left;
+        s.right = right;
+        s.dir = dir;
+        s.speed = speed;
+        s.prevX = prevX;
+        s.tag = tag;
+        s.clock = clock;
+        s.alive = alive;
+        s.now = now;
+        s.size = size;
+        s.killed = killed;
+        s.shared = true;
+        shared = true;
+        return s;
+    }
+
+    /**
+     * Makes the contents equal to {@code src}'s, reusing this store's own arrays
+     * when they are large enough (they grow to {@code src}'s capacity, so a
+     * store refreshed from the same source reallocates only when that grows).
+     */
+    void copyFrom(EntityStore src) {
+        int n = src.size;
+        if (shared || x.length < n) {
+            allocate(Math.max(src.x.length, x.length));
+            shared = false;
+        }
+        System.arraycopy(src.x, 0, x, 0, n);
+        System.arraycopy(src.y, 0, y, 0, n);
+        System.arraycopy(src.w, 0, w, 0, n);
+        System.arraycopy(src.h, 0, h, 0, n);
+        System.arraycopy(src.left, 0, left, 0, n);
+        System.arraycopy(src.right, 0, right, 0, n);
+        System.arraycopy(src.dir, 0, dir, 0, n);
+        System.arraycopy(src.speed, 0, speed, 0, n);
+        System.arraycopy(src.prevX, 0, prevX, 0, n);
+        System.arraycopy(src.tag, 0, tag, 0, n);
+        System.arraycopy(src.clock, 0, clock, 0, n);
+        int words = (n + 63) >>> 6;
+        System.arraycopy(src.alive, 0, alive, 0, words);
+        Arrays.fill(alive, words, alive.length, 0);
+        size = n;
+        killed = src.killed;
+        now = src.now;
+    }
+
+    /** Takes private copies of the arrays if a snapshot still shares them. */
+    void beginWrite() {
+        if (!shared) return;
+        x = x.clone();
+        y = y.clone();
+        w = w.clone();
+        h = h.clone();
+        left = left.clone();
+        right = right.clone();
+        dir = dir.clone();
+        speed = speed.clone();
+        prevX = prevX.clone();
+        tag = tag.clone();
+        clock = clock.clone();
+        alive = alive.clone();
+        shared = false;
+    }
+
+    /** Left end of the horizontal span the entity can ever occupy. */
+    int spanX(int id) {
+        return left[id];
+    }
+
+    /** Width of the horizontal span the entity can ever occupy. */
+    int spanWidth(int id) {
+        return right[id] + w[id] - left[id];
+    }
+
+    boolean isAlive(int id) {
+        return (alive[id >>> 6] & (1L << id)) != 0;
+    }
+
+    /** Marks the entity for removal by the next {@link #removeKilled}. */
+    void kill(int id) {
+        if (isAlive(id)) {
+            beginWrite();
+            alive[id >>> 6] &= ~(1L << id);
+            killed++;
+        }
+    }
+
+    /**
+     * Swap-removes every killed entity, from the highest id down so that the
+     * entity moved into a freed slot is always a live one, and mirrors each
+     * move in {@code grid} (which must index the entities' spans).
+     */
+    void removeKilled(SpatialGrid grid) {
+        if (killed == 0) return;
+        beginWrite();
+        for (int word = (size - 1) >>> 6; word >= 0 && killed > 0; word--) {
+            int base = word << 6;
+            long dead = ~alive[word];
+            if (base + 64 > size) dead &= (1L << (size - base)) - 1; // ignore slots past the end
+            while (dead != 0) {
+                int id = base + 63 - Long.numberOfLeadingZeros(dead);
+                dead &= ~(1L << id);
+                swapRemove(id, grid);
+                killed--;
+            }
+        }
+    }
+
+    private void swapRemove(int id, SpatialGrid grid) {
+        grid.remove(id, spanX(id), spanWidth(id));
+        int last = --size;
+        if (id != last) {
+            grid.rename(last, id, spanX(last), spanWidth(last));
+            x[id] = x[last];
+            y[id] = y[last];
+            w[id] = w[last];
+            h[id] = h[last];
+            left[id] = left[last];
+            right[id] = right[last];
+            dir[id] = dir[last];
+            speed[id] = speed[last];
+            prevX[id] = prevX[last];
+            tag[id] = tag[last];
+            clock[id] = clock[last];
+            alive[id >>> 6] |= 1L << id;
+        }
+        alive[last >>> 6] &= ~(1L << last);
+    }
+
+    /** Moves every entity one step along its patrol, turning around at the ends. */
+    void updatePatrols() {
+        beginWrite();
+        for (int i = 0; i < size; i++) step(i);
+        now++;
+    }
+
+    /**
+     * Moves the entities in {@code ids} one step along their patrols, first
+     * catching up the ones that missed earlier steps. The other entities
+     * stay where they are until they are stepped or caught up.
+     */
+    void updatePatrols(IntList ids) {
+        beginWrite();
+        for (int n = 0; n < ids.size(); n++) step(ids.get(n));
+        now++;
+    }
+
+    private void step(int i) {
+        int behind = now - clock[i];
+        if (behind > 0) fastForward(i, behind);
+        int nx = x[i];
+        prevX[i] = nx;
+        nx += dir[i] * speed[i];
+        if (nx < left[i]) {
+            nx = left[i];
+            dir[i] = 1;
+        } else if (nx > right[i]) {
+            nx = right[i];
+            dir[i] = -1;
+        }
+        x[i] = nx;
+        clock[i] = now + 1;
+    }
+
+    /**
+     * Advances entity {@code i} by {@code steps} steps in closed form. Stepping
+     * clamps at the ends instead of reflecting, so from one end it takes
+     * {@code (right - left) / speed + 1} steps to be at the other end heading
+     * back, and twice that is the period.
+     */
+    private void fastForward(int i, int steps) {
+        int s = speed[i];
+        if (s == 0) return;
+        int l = left[i], r = right[i];
+        int xi = x[i];
+        long t = steps;
+        // finish the current leg
+        long leg = dir[i] > 0 ? (r - xi) / s + 1 : (xi - l) / s + 1;
+        if (t < leg) {
+            x[i] = xi + dir[i] * (int) t * s;
+            return;
+        }
+        t -= leg;
+        int d = -dir[i];
+        xi = d < 0 ? r : l;
+        // whole periods change nothing, then at most two partial legs
+        long full = (r - l) / s + 1;
+        t %= 2 * full;
+        if (t >= full) {
+            t -= full;
+            d = -d;
+            xi = d < 0 ? r : l;
+        }
+        x[i] = xi + d * (int) t * s;
+        dir[i] = d;
+    }
+}
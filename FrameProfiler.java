@@ -0,0 +1,282 @@
+package games.trial;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+/**
+ * Where the time of a step and of a frame goes.
+ *
+ * A {@link GameWorld} given a profiler marks the end of each phase of its
+ * step (integration, platform collisions, banknote pickup, enemies, camera
+ * and streaming); the front ends time their rendering the same way. Every
+ * phase goes into a {@link Histogram} for the whole session and into one for
+ * the current second, which feeds the overlay lines. Entity counts and the
+ * allocation rate of the calling thread are sampled alongside.
+ *
+ * While the profiler is enabled and a JFR recording is running, every step
+ * and frame is also committed as a {@code games.trial.Step} /
+ * {@code games.trial.Frame} event; a disabled profiler emits none. A phase
+ * the step never reached (it ended early, on a death or a completion) is 0
+ * in the event.
+ *
+ * A disabled profiler only costs a field read per call. All calls must come
+ * from one thread (the one stepping and drawing the world).
+ */
+final class FrameProfiler {
+    static final int INTEGRATE = 0;
+    static final int PLATFORMS = 1;
+    static final int COINS = 2;
+    static final int ENEMIES = 3;
+    static final int CAMERA = 4;
+    static final int STEP = 5;   // the whole step
+    static final int RENDER = 6; // drawing the scene
+    private static final int PHASES = 7;
+    private static final String[] PHASE_NAMES = {
+            "integrate", "platforms", "coins", "enemies", "camera", "step", "render"};
+    private static final long WINDOW_NANOS = 1_000_000_000L;
+
+    private static final com.sun.management.ThreadMXBean THREADS = allocationCounter();
+
+    private final Histogram[] total = new Histogram[PHASES];
+    private final Histogram[] window = new Histogram[PHASES];
+    private final long[] phaseNanos = new long[PHASES];
+    private int marked; // bit per phase reached in the current step
+    private boolean enabled;
+    private long last;
+    private long stepStart;
+    private long frameStart;
+    private StepEvent stepEvent;
+    private FrameEvent frameEvent;
+
+    // sampled once per window
+    private int platforms, coins, enemies;
+    private long windowStart;
+    private long windowAllocated = -1;
+    private double allocBytesPerSecond;
+    private long allocatedTotal;
+    private long sessionStart;
+    private String[] overlay = {"profiling: collecting..."};
+
+    FrameProfiler() {
+        for (int i = 0; i < PHASES; i++) {
+            total[i] = new Histogram();
+            window[i] = new Histogram();
+        }
+    }
+
+    private static com.sun.management.ThreadMXBean allocationCounter() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) mx;
+        if (!threads.isThreadAllocatedMemorySupported()) return null;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        return threads;
+    }
+
+    boolean enabled() {
+        return enabled;
+    }
+
+    void setEnabled(boolean on) {
+        if (on && !enabled) {
+            windowStart = System.nanoTime();
+            if (sessionStart == 0) sessionStart = windowStart;
+            windowAllocated = -1;
+        }
+        enabled = on;
+    }
+
+    void toggle() {
+        setEnabled(!enabled);
+    }
+
+    void beginStep() {
+        if (!enabled) return;
+        if (FlightRecorder.isInitialized()) {
+            stepEvent = new StepEvent();
+            stepEvent.begin();
+        }
+        stepStart = last = System.nanoTime();
+        marked = 0;
+    }
+
+    /** Ends phase {@code phase} of the current step, which began where the previous one ended. */
+    void mark(int phase) {
+        if (!enabled) return;
+        long now = System.nanoTime();
+        phaseNanos[phase] = now - last;
+        marked |= 1 << phase;
+        last = now;
+    }
+
+    /** Ends the current step; the counts are the world's resident entities after it. */
+    void endStep(int platformCount, int coinCount, int enemyCount) {
+        if (!enabled) return;
+        long now = System.nanoTime();
+        phaseNanos[STEP] = now - stepStart;
+        marked |= 1 << STEP;
+        for (int p = 0; p <= STEP; p++) {
+            if ((marked & (1 << p)) != 0) {
+                total[p].record(phaseNanos[p]);
+                window[p].record(phaseNanos[p]);
+            }
+        }
+        platforms = platformCount;
+        coins = coinCount;
+        enemies = enemyCount;
+
+        StepEvent e = stepEvent;
+        if (e != null) {
+            stepEvent = null;
+            e.end();
+            if (e.shouldCommit()) {
+                e.integrate = phaseNanos(INTEGRATE);
+                e.platformCollisions = phaseNanos(PLATFORMS);
+                e.coinPickup = phaseNanos(COINS);
+                e.enemyUpdate = phaseNanos(ENEMIES);
+                e.camera = phaseNanos(CAMERA);
+                e.platforms = platformCount;
+                e.coins = coinCount;
+                e.enemies = enemyCount;
+                e.commit();
+            }
+        }
+        roll(now);
+    }
+
+    /** Time of {@code phase} in the current step, 0 if the step ended before it. */
+    private long phaseNanos(int phase) {
+        return (marked & (1 << phase)) != 0 ? phaseNanos[phase] : 0;
+    }
+
+    void beginFrame() {
+        if (!enabled) return;
+        if (FlightRecorder.isInitialized()) {
+            frameEvent = new FrameEvent();
+            frameEvent.begin();
+        }
+        frameStart = System.nanoTime();
+    }
+
+    void endFrame() {
+        if (!enabled) return;
+        long now = System.nanoTime();
+        total[RENDER].record(now - frameStart);
+        window[RENDER].record(now - frameStart);
+        FrameEvent e = frameEvent;
+        if (e != null) {
+            frameEvent = null;
+            e.commit();
+        }
+        roll(now);
+    }
+
+    /** Overlay text, refreshed once a second. */
+    String[] overlayLines() {
+        return overlay;
+    }
+
+    private void roll(long now) {
+        if (now - windowStart < WINDOW_NANOS) return;
+        double seconds = (now - windowStart) / 1e9;
+        if (THREADS != null) {
+            long allocated = THREADS.getCurrentThreadAllocatedBytes();
+            if (windowAllocated >= 0) {
+                allocatedTotal += allocated - windowAllocated;
+                allocBytesPerSecond = (allocated - windowAllocated) / seconds;
+            }
+            windowAllocated = allocated;
+        }
+
+        String[] lines = new String[PHASES + 2];
+        for (int p = 0; p < PHASES; p++) {
+            Histogram h = window[p];
+            lines[p] = String.format(Locale.ROOT, "%-9s %5d/s  p50 %7.1f  p99 %7.1f  max %7.1f us",
+                    PHASE_NAMES[p], Math.round(h.count() / seconds),
+                    h.percentile(50) / 1e3, h.percentile(99) / 1e3, h.max() / 1e3);
+            h.reset();
+        }
+        lines[PHASES] = String.format(Locale.ROOT, "platforms %d  coins %d  enemies %d", platforms, coins, enemies);
+        lines[PHASES + 1] = THREADS == null ? "allocation rate n/a"
+                : String.format(Locale.ROOT, "allocation %.1f KB/s", allocBytesPerSecond / 1024);
+        overlay = lines;
+        windowStart = now;
+    }
+
+    /**
+     * Writes the session histograms to {@code file}: JSON if the name ends in
+     * {@code .json}, CSV otherwise. Times are in nanoseconds.
+     */
+    void dump(File file) throws IOException {
+        boolean json = file.getName().endsWith(".json");
+        double seconds = sessionStart == 0 ? 0 : (System.nanoTime() - sessionStart) / 1e9;
+        try (PrintWriter out = new PrintWriter(new FileWriter(file))) {
+            if (json) {
+                out.println("{");
+                out.printf(Locale.ROOT, "  \"seconds\": %.3f,%n", seconds);
+                out.printf(Locale.ROOT, "  \"allocatedBytes\": %d,%n", allocatedTotal);
+                out.printf(Locale.ROOT, "  \"entities\": {\"platforms\": %d, \"coins\": %d, \"enemies\": %d},%n",
+                        platforms, coins, enemies);
+                out.println("  \"phases\": {");
+                for (int p = 0; p < PHASES; p++) {
+                    Histogram h = total[p];
+                    out.printf(Locale.ROOT,
+                            "    \"%s\": {\"count\": %d, \"mean\": %.1f, \"p50\": %d, \"p90\": %d, \"p99\": %d, \"p999\": %d, \"max\": %d}%s%n",
+                            PHASE_NAMES[p], h.count(), h.mean(), h.percentile(50), h.percentile(90),
+                            h.percentile(99), h.percentile(99.9), h.max(), p < PHASES - 1 ? "," : "");
+                }
+                out.println("  }");
+                out.println("}");
+            } else {
+                out.println("phase,count,mean,p50,p90,p99,p999,max");
+                for (int p = 0; p < PHASES; p++) {
+                    Histogram h = total[p];
+                    out.printf(Locale.ROOT, "%s,%d,%.1f,%d,%d,%d,%d,%d%n", PHASE_NAMES[p], h.count(), h.mean(),
+                            h.percentile(50), h.percentile(90), h.percentile(99), h.percentile(99.9), h.max());
+                }
+            }
+        }
+    }
+
+    /** Dumps to {@code file} when the JVM exits. */
+    void dumpOnExit(File file) {
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                dump(file);
+            } catch (IOException e) {
+                System.err.println("could not write profile: " + e);
+            }
+        }, "profile-dump"));
+    }
+
+    @Name("games.trial.Step")
+    @Label("Game Step")
+    @Category("Game")
+    static final class StepEvent extends Event {
+        @Label("Integrate") @Timespan long integrate;
+        @Label("Platform Collisions") @Timespan long platformCollisions;
+        @Label("Coin Pickup") @Timespan long coinPickup;
+        @Label("Enemy Update") @Timespan long enemyUpdate;
+        @Label("Camera And Streaming") @Timespan long camera;
+        @Label("Platforms") int platforms;
+        @Label("Coins") int coins;
+        @Label("Enemies") int enemies;
+    }
+
+    @Name("games.trial.Frame")
+    @Label("Game Frame")
+    @Category("Game")
+    static final class FrameEvent extends Event {
+    }
+}
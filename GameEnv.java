@@ -0,0 +1,234 @@
+package games.trial;
+
+/**
+ * Gym-style environment over one {@link GameWorld}, for training agents
+ * without a window: {@link #reset} starts an episode on a seeded level and
+ * {@link #step} applies an action and writes a compact numeric observation
+ * of the game state, so an observation costs a few grid queries instead of
+ * rendering a frame.
+ *
+ * An action is a button mask ({@link InputState#LEFT}, {@link InputState#RIGHT},
+ * {@link InputState#JUMP}), so there are {@link #ACTIONS} of them.
+ *
+ * The observation is {@link #OBSERVATION_SIZE} floats: the player (progress,
+ * height, velocity, on ground, jumps used), then the nearest platforms,
+ * banknotes and enemies around the player, nearest first, relative to the
+ * player and in units of 100 px. Slots with nothing in them are all zero,
+ * including their leading presence flag.
+ *
+ * The reward of a step is the forward progress in meters plus the score
+ * gained (hundredths), minus {@link #DEATH_PENALTY} per life lost, plus
+ * {@link #COMPLETION_BONUS} when the level is completed. A death rewinds the
+ * world to its last checkpoint, progress and score included, so that lost
+ * progress comes back as a negative reward. The episode ends when the run
+ * does, or is truncated after a step limit.
+ */
+final class GameEnv {
+    static final int ACTIONS = 8;
+
+    // Observation layout
+    static final int PLAYER_FEATURES = 6;  // progress, y, vx, vy, on ground, jumps used
+    static final int PLATFORM_SLOTS = 4;
+    static final int PLATFORM_FEATURES = 5; // present, left dx, right dx, top dy, bottom dy
+    static final int COIN_SLOTS = 4;
+    static final int COIN_FEATURES = 3;     // present, dx, dy
+    static final int ENEMY_SLOTS = 4;
+    static final int ENEMY_FEATURES = 4;    // present, dx, dy, direction
+    static final int PLATFORMS_AT = PLAYER_FEATURES;
+    static final int COINS_AT = PLATFORMS_AT + PLATFORM_SLOTS * PLATFORM_FEATURES;
+    static final int ENEMIES_AT = COINS_AT + COIN_SLOTS * COIN_FEATURES;
+    static final int OBSERVATION_SIZE = ENEMIES_AT + ENEMY_SLOTS * ENEMY_FEATURES;
+
+    static final double DEATH_PENALTY = 1.0;
+    static final double COMPLETION_BONUS = 10.0;
+    static final int DEFAULT_MAX_EPISODE_STEPS = 6000; // a run to the flag takes about 3000
+
+    private static final float SCALE = 0.01f;  // px to observation units
+    private static final int LOOK_BEHIND = 200; // px behind the player whose objects are observed
+    private static final int LOOK_AHEAD = 500;
+
+    private final GameWorld world;
+    private final int maxEpisodeSteps;
+    private final InputState input = new InputState();
+    private final IntList nearby = new IntList();
+    private final float[] observation = new float[OBSERVATION_SIZE];
+    // nearest-first selection scratch
+    private final int[] slotIds = new int[Math.max(PLATFORM_SLOTS, Math.max(COIN_SLOTS, ENEMY_SLOTS))];
+    private final int[] slotDistances = new int[slotIds.length];
+    private int steps;
+    private boolean done;
+    private boolean truncated;
+
+    GameEnv(int levelLength, int maxEpisodeSteps) {
+        this.world = new GameWorld(0, levelLength);
+        this.maxEpisodeSteps = maxEpisodeSteps;
+    }
+
+    GameEnv() {
+        this(GameWorld.DEFAULT_LEVEL_LENGTH, DEFAULT_MAX_EPISODE_STEPS);
+    }
+
+    /** The world being played; read-only for callers. */
+    GameWorld world() {
+        return world;
+    }
+
+    /** Starts an episode on the first level of {@code seed} and writes its first observation at {@code offset}. */
+    void reset(long seed, float[] obs, int offset) {
+        world.reset(seed);
+        steps = 0;
+        done = false;
+        truncated = false;
+        observe(obs, offset);
+    }
+
+    /** As {@link #reset(long, float[], int)}, into this environment's own buffer, which it returns. */
+    float[] reset(long seed) {
+        reset(seed, observation, 0);
+        return observation;
+    }
+
+    /**
+     * Holds the buttons of {@code action} for one step, writes the observation
+     * at {@code offset} and returns the reward. After the episode is
+     * {@link #isDone() done}, call {@link #reset} before stepping again.
+     */
+    double step(int action, float[] obs, int offset) {
+        if (done) throw new IllegalStateException("episode is over; reset first");
+        if (action < 0 || action >= ACTIONS) throw new IllegalArgumentException("action " + action);
+        double meters = world.metersTraveled();
+        int score = world.score();
+        int lives = world.lives();
+        boolean wasCompleted = world.isCompleted();
+
+        input.setBits(action);
+        world.step(input);
+        steps++;
+
+        double reward = world.metersTraveled() - meters + (world.score() - score) / 100.0
+                - DEATH_PENALTY * (lives - world.lives());
+        if (world.isCompleted() && !wasCompleted) reward += COMPLETION_BONUS;
+        if (!world.isRunning()) {
+            done = true;
+        } else if (steps >= maxEpisodeSteps) {
+            done = true;
+            truncated = true;
+        }
+        observe(obs, offset);
+        return reward;
+    }
+
+    /** As {@link #step(int, float[], int)}, into this environment's own buffer (see {@link #observation()}). */
+    double step(int action) {
+        return step(action, observation, 0);
+    }
+
+    /** The environment's own observation buffer, written by the overloads without one. */
+    float[] observation() {
+        return observation;
+    }
+
+    /** Whether the episode has ended, by the run ending or by truncation. */
+    boolean isDone() {
+        return done;
+    }
+
+    /** Whether the episode was cut off by the step limit rather than ended by the game. */
+    boolean isTruncated() {
+        return truncated;
+    }
+
+    int episodeSteps() {
+        return steps;
+    }
+
+    /** Writes the observation of the current state at {@code offset}. */
+    void observe(float[] obs, int o) {
+        java.util.Arrays.fill(obs, o, o + OBSERVATION_SIZE, 0f);
+        Box p = world.player();
+        int px = p.x, py = p.y, pw = p.width, ph = p.height;
+        obs[o] = (float) (world.metersTraveled() / 100.0);
+        obs[o + 1] = py / (float) GameWorld.HEIGHT;
+        obs[o + 2] = (float) world.vx() / 4f;
+        obs[o + 3] = (float) world.vy() / 16f;
+        obs[o + 4] = world.isOnGround() ? 1f : 0f;
+        obs[o + 5] = world.jumpsUsed() / (float) GameWorld.MAX_JUMPS;
+
+        int minX = px - LOOK_BEHIND, maxX = px + pw + LOOK_AHEAD;
+
+        world.queryPlatforms(minX, maxX, nearby);
+        int n = 0;
+        for (int i = 0; i < nearby.size(); i++) {
+            Box b = world.platform(nearby.get(i));
+            if (b.x + b.width > minX && b.x < maxX) n = offer(nearby.get(i), gap(px, pw, b.x, b.width), n, PLATFORM_SLOTS);
+        }
+        for (int s = 0, at = o + PLATFORMS_AT; s < n; s++, at += PLATFORM_FEATURES) {
+            Box b = world.platform(slotIds[s]);
+            obs[at] = 1f;
+            obs[at + 1] = (b.x - px) * SCALE;
+            obs[at + 2] = (b.x + b.width - px) * SCALE;
+            obs[at + 3] = (b.y - (py + ph)) * SCALE;
+            obs[at + 4] = (b.y + b.height - py) * SCALE;
+        }
+
+        EntityStore c = world.coins();
+        world.queryCoins(minX, maxX, nearby);
+        n = 0;
+        for (int i = 0; i < nearby.size(); i++) {
+            int id = nearby.get(i);
+            if (c.isAlive(id) && c.x[id] + c.w[id] > minX && c.x[id] < maxX) {
+                n = offer(id, gap(px, pw, c.x[id], c.w[id]), n, COIN_SLOTS);
+            }
+        }
+        for (int s = 0, at = o + COINS_AT; s < n; s++, at += COIN_FEATURES) {
+            int id = slotIds[s];
+            obs[at] = 1f;
+            obs[at + 1] = (c.x[id] + c.w[id] / 2 - (px + pw / 2)) * SCALE;
+            obs[at + 2] = (c.y[id] + c.h[id] / 2 - (py + ph / 2)) * SCALE;
+        }
+
+        // enemies this close to the player are inside the world's active region, so their x is current
+        EntityStore e = world.enemies();
+        world.queryEnemies(minX, maxX, nearby);
+        n = 0;
+        for (int i = 0; i < nearby.size(); i++) {
+            int id = nearby.get(i);
+            if (e.isAlive(id) && e.x[id] + e.w[id] > minX && e.x[id] < maxX) {
+                n = offer(id, gap(px, pw, e.x[id], e.w[id]), n, ENEMY_SLOTS);
+            }
+        }
+        for (int s = 0, at = o + ENEMIES_AT; s < n; s++, at += ENEMY_FEATURES) {
+            int id = slotIds[s];
+            obs[at] = 1f;
+            obs[at + 1] = (e.x[id] + e.w[id] / 2 - (px + pw / 2)) * SCALE;
+            obs[at + 2] = (e.y[id] + e.h[id] / 2 - (py + ph / 2)) * SCALE;
+            obs[at + 3] = e.speed[id] == 0 ? 0f : e.dir[id];
+        }
+    }
+
+    /** Horizontal gap between the player's span and {@code [x, x + w)}; 0 if they overlap. */
+    private static int gap(int px, int pw, int x, int w) {
+        return Math.max(0, Math.max(x - (px + pw), px - (x + w)));
+    }
+
+    /**
+     * Keeps the {@code slots} nearest offers, nearest first (ties by id, so
+     * the choice doesn't depend on query order). Returns the new count.
+     */
+    private int offer(int id, int distance, int n, int slots) {
+        int at = n;
+        while (at > 0 && (slotDistances[at - 1] > distance
+                || slotDistances[at - 1] == distance && slotIds[at - 1] > id)) {
+            at--;
+        }
+        if (at >= slots) return n;
+        int last = Math.min(n, slots - 1);
+        for (int i = last; i > at; i--) {
+            slotIds[i] = slotIds[i - 1];
+            slotDistances[i] = slotDistances[i - 1];
+        }
+        slotIds[at] = id;
+        slotDistances[at] = distance;
+        return Math.min(n + 1, slots);
+    }
+}
@@ -0,0 +1,191 @@
+package games.trial;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.image.BufferStrategy;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Dedicated game-loop thread: fixed-timestep simulation plus active rendering.
+ *
+ * The simulation advances in fixed steps from an accumulator of real elapsed
+ * time, so slow frames or GC pauses no longer slow the game down; they just
+ * run several steps before the next frame. Frames are drawn straight into a
+ * {@link BufferStrategy} on a {@link Canvas}, interpolated between the last two
+ * steps. The simulation and the rendering both run on this thread; key events
+ * arrive from the EDT through a lock-free {@link InputQueue}.
+ *
+ * When given a {@link Replay.Recorder}, the loop records the buttons of every
+ * step of the first run and saves the replay once that run ends.
+ *
+ * F3 toggles the {@link FrameProfiler} overlay (step phases and render time).
+ *
+ * Once the run is over and no keys arrive, the loop goes idle: it stops
+ * stepping and redraws the final frame only a few times a second (the window
+ * may have been uncovered), parked in between; a key press wakes it at once.
+ * A flipped buffer strategy must be redrawn whole, so there is no partial
+ * repainting here (the Swing panel does that).
+ */
+final class GameLoop implements Runnable {
+    // Physics constants (gravity, speeds) are expressed per step and were tuned
+    // for the original 16 ms timer, so the step keeps that length.
+    static final long STEP_NANOS = 16_000_000L;
+    private static final long MAX_FRAME_NANOS = 250_000_000L; // don't try to catch up more than this
+    private static final long FRAME_NANOS = 1_000_000_000L / 120; // render cap
+    private static final long IDLE_FRAME_NANOS = 250_000_000L; // redraw period once the run is over
+    private static final int KEY_PRESSED = 1 << 16;
+    private static final Color SKY = new Color(135, 206, 235);
+
+    private final GameWorld world;
+    private final Canvas canvas;
+    private final SceneRenderer renderer = new SceneRenderer();
+    private final InputQueue input = new InputQueue(256);
+    private final KeyboardInput keys = new KeyboardInput();
+    private final FrameProfiler profiler;
+    private Replay.Recorder recorder;
+    private final File recordTo;
+    private volatile boolean stopped;
+    private volatile Thread thread;
+
+    private GameLoop(GameWorld world, Canvas canvas, FrameProfiler profiler, Replay.Recorder recorder, File recordTo) {
+        this.world = world;
+        this.canvas = canvas;
+        this.profiler = profiler;
+        this.recorder = recorder;
+        this.recordTo = recordTo;
+    }
+
+    /** Opens the window and starts the loop thread. Call on the EDT. */
+    static GameLoop start(GameWorld world) {
+        return start(world, new FrameProfiler(), null, null);
+    }
+
+    /**
+     * As {@link #start(GameWorld)}, timing into {@code profiler} and recording the
+     * first run into {@code recordTo} (if not null); the recorder must have been
+     * made with the world's parameters.
+     */
+    static GameLoop start(GameWorld world, FrameProfiler profiler, Replay.Recorder recorder, File recordTo) {
+        JFrame frame = new JFrame("Super Mario - simple demo");
+        Canvas canvas = new Canvas();
+        canvas.setPreferredSize(new Dimension(GameWorld.WIDTH, GameWorld.HEIGHT));
+        canvas.setIgnoreRepaint(true);
+        canvas.setFocusable(true);
+        frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        frame.setResizable(false);
+        frame.setIgnoreRepaint(true);
+        frame.getContentPane().add(canvas);
+        frame.pack();
+        frame.setLocationRelativeTo(null);
+        frame.setVisible(true);
+        canvas.createBufferStrategy(2);
+
+        world.setProfiler(profiler);
+        GameLoop loop = new GameLoop(world, canvas, profiler, recorder, recordTo);
+        canvas.addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                loop.input.offer(e.getKeyCode() | KEY_PRESSED);
+                LockSupport.unpark(loop.thread);
+            }
+
+            @Override
+            public void keyReleased(KeyEvent e) {
+                loop.input.offer(e.getKeyCode());
+                LockSupport.unpark(loop.thread);
+            }
+        });
+        canvas.requestFocus();
+
+        Thread t = new Thread(loop, "game-loop");
+        loop.thread = t;
+        t.setDaemon(true);
+        t.start();
+        return loop;
+    }
+
+    void stop() {
+        stopped = true;
+    }
+
+    @Override
+    public void run() {
+        long previous = System.nanoTime();
+        long accumulator = 0;
+        long nextFrame = previous;
+        long lastFrame = previous;
+        while (!stopped) {
+            long now = System.nanoTime();
+            if (!world.isRunning() && input.isEmpty()) {
+                if (now - lastFrame >= IDLE_FRAME_NANOS) {
+                    render(1.0);
+                    lastFrame = now;
+                }
+                LockSupport.parkNanos(IDLE_FRAME_NANOS);
+                previous = System.nanoTime(); // idle time isn't owed to the simulation
+                accumulator = 0;
+                continue;
+            }
+            accumulator += Math.min(now - previous, MAX_FRAME_NANOS);
+            previous = now;
+
+            while (!input.isEmpty()) {
+                int ev = input.poll();
+                if (ev == (KeyEvent.VK_F3 | KEY_PRESSED)) profiler.toggle();
+                if (keys.apply(ev & ~KEY_PRESSED, (ev & KEY_PRESSED) != 0) && !world.isRunning()) {
+                    world.restart();
+                }
+            }
+            while (accumulator >= STEP_NANOS) {
+                if (recorder != null) recorder.step(keys.state().bits());
+                world.step(keys.state());
+                keys.stepped();
+                if (recorder != null && !world.isRunning()) saveRecording();
+                accumulator -= STEP_NANOS;
+            }
+            render(accumulator / (double) STEP_NANOS);
+            lastFrame = now;
+
+            // sleep until the next frame slot (or the next step, if that comes first)
+            nextFrame = Math.max(nextFrame + FRAME_NANOS, now);
+            long wake = Math.min(nextFrame, now + (STEP_NANOS - accumulator));
+            long wait = wake - System.nanoTime();
+            if (wait > 0) LockSupport.parkNanos(wait);
+        }
+    }
+
+    private void saveRecording() {
+        try {
+            recorder.finish(world).save(recordTo);
+            System.out.println("replay saved to " + recordTo);
+        } catch (IOException e) {
+            System.err.println("could not save replay: " + e);
+        }
+        recorder = null;
+    }
+
+    private void render(double alpha) {
+        BufferStrategy bs = canvas.getBufferStrategy();
+        do {
+            do {
+                Graphics2D g = (Graphics2D) bs.getDrawGraphics();
+                try {
+                    g.setColor(SKY);
+                    g.fillRect(0, 0, GameWorld.WIDTH, GameWorld.HEIGHT);
+                    profiler.beginFrame();
+                    renderer.render(world, g, alpha, canvas.getGraphicsConfiguration());
+                    profiler.endFrame();
+                    if (profiler.enabled()) renderer.renderProfile(g, profiler);
+                } finally {
+                    g.dispose();
+                }
+            } while (bs.contentsRestored());
+            bs.show();
+        } while (bs.contentsLost());
+        Toolkit.getDefaultToolkit().sync();
+    }
+}
@@ -0,0 +1,1072 @@
+package games.trial;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The whole game state and rules, with no AWT/Swing dependency.
+ *
+ * A world is advanced one fixed step at a time by {@link #step(InputState)},
+ * so it can be driven by the Swing panel, the {@link GameLoop} thread or a
+ * headless runner at whatever speed the CPU allows. Rendering reads it
+ * through the package-private accessors.
+ *
+ * The level comes in chunks from a {@link LevelSource}, generated by a
+ * {@link LevelStreamer} or read from an authored {@link LevelFile}: only the
+ * chunks around the camera and the player are resident, so the entity lists,
+ * the per-step enemy update and the startup cost don't grow with the level
+ * length.
+ */
+final class GameWorld {
+    static final int WIDTH = 900;   // view width, used for culling by callers
+    static final int HEIGHT = 360;
+
+    // Player
+    private final Box player;
+    private double vx = 0;
+    private double vy = 0;
+    static final double GRAVITY = 0.9;
+    static final double MOVE_SPEED = 3.5;
+    static final double JUMP_SPEED = -13;
+    static final int PLAYER_WIDTH = 32;
+    static final int PLAYER_HEIGHT = 48;
+    private boolean onGround = false;
+
+    // --- doppio salto: contatori e flags ---
+    private int jumpsUsed = 0;           // quanti salti sono stati effettuati (0 = nessuno)
+    static final int MAX_JUMPS = 2; // permette il doppio salto
+    private boolean jumpKeyDown = false; // evita ripetizioni mentre il tasto è tenuto premuto
+
+    // World
+    private final ArrayList<Box> platforms = new ArrayList<>();
+    private final EntityStore coins = new EntityStore(256);
+    private final EntityStore enemies = new EntityStore(64);
+    private int staticVersion = 0; // bumped whenever platforms change, so renderers can drop caches
+
+    // Broad phase: ids in these grids are indices into the stores above
+    private static final int GRID_CELL = 256;     // bucket width in px
+    static final int DEFAULT_LEVEL_LENGTH = 10000;
+    static final double DEFAULT_ENEMY_DENSITY = 0.25; // chance of an enemy patrolling near each platform
+    private final int levelLength;
+    private final double enemyDensity;
+    private SpatialGrid platformGrid;
+    private SpatialGrid coinGrid;
+    private SpatialGrid enemyGrid;
+    private final IntList nearby = new IntList();
+    // Most chunks resident at once (within a chunk of the view and the player), plus one for what spills out of them
+    private static final int RESIDENT_CHUNKS = (WIDTH + 2 * LevelStreamer.CHUNK_WIDTH) / LevelStreamer.CHUNK_WIDTH + 3;
+    // The player as a dynamic body, moved by the same physics stage any other body would be
+    private PhysicsStage physics;
+    private final Bodies playerBody = new Bodies(1);
+    // Enemies whose patrol range comes this close to the view or the player are stepped; the rest wait
+    static final int DEFAULT_ACTIVE_MARGIN = 128;
+    private int activeMargin = DEFAULT_ACTIVE_MARGIN;
+    private final IntList evicted = new IntList();
+
+    // Level streaming: chunks [firstChunk, lastChunk] are resident
+    private LevelSource level;
+    private final LevelSource authored; // played on every run instead of generating levels, if not null
+    private final LevelProvider provider; // hands out generated levels built ahead of time, if not null
+    private LevelStreamer prefetch;       // level to ask the provider for on the next step, if not null
+    private Random ahead;                 // rand one level further on, for prefetching; null until needed
+    private int firstChunk;
+    private int lastChunk;
+    private int loadingChunk;
+    private int chunksCounted;    // chunks [0, chunksCounted) have had their points added to the ledger
+    private int chunkPoints;      // points on the banknotes and enemies of the chunk being generated
+    private long[] coinsTaken;    // per chunk counted so far, bit per coin ordinal: collected this run
+    private long[] enemiesTaken;  // per chunk counted so far, bit per enemy ordinal: stomped this run
+    private boolean takenShared;  // the two arrays above are also referenced by a snapshot
+    private long chunksStreamed;  // times the resident set changed, for callers measuring steps
+
+    // Respawn point: the whole world as it was at the last checkpoint
+    private static final int CHECKPOINT_SPACING = 1000;  // px of progress between checkpoints
+    private static final int CHECKPOINT_CLEARANCE = 200; // no enemy patrol range this close to the player
+    private Snapshot checkpoint;
+    private boolean checkpointShared; // also referenced by a snapshot: take the next one into a new object
+    private int checkpointX;
+
+    // Camera offset for simple side-scroll
+    private int camX = 0;
+
+    // Positions at the start of the last step, so a renderer running between steps can interpolate
+    private int prevCamX = 0;
+    private int prevPlayerX = 0;
+    private int prevPlayerY = 0;
+
+    private boolean running = true;
+    // score, lives and distance, kept up to date by events; the completion rules read them
+    private final ScoreLedger ledger = new ScoreLedger();
+    private boolean completed = false; // livello completato (massimo raggiungibile == 5000)
+    // completion by distance
+    private static final double METERS_TO_COMPLETE = 100.0; // finish at 100 meters
+    private final double metersToComplete; // METERS_TO_COMPLETE, or up to an authored level's flag
+    private final ScoreLedger.Rule distanceRule;
+    private int flagPixelX = -1; // world x position where the flag will be placed
+
+    private FrameProfiler profiler; // null unless someone wants the step phases timed
+    private Telemetry telemetry; // null unless someone wants the runs' events recorded
+    private int telemetryRun = -1; // this run's number in telemetry, from its first step
+    private int runSteps; // steps played in this run; not part of snapshots, like the profiler
+    private long levelSeed; // of the level being played, 0 if authored
+
+    private long seed;
+    private Random rand;
+    private int levelsBuilt; // levels drawn from rand so far
+    // distance tracking
+    private int startX = 0;            // punto di partenza in pixel
+    private int maxXReached = 0;       // massimo x raggiunto (per contare solo avanzamento a destra)
+    private static final double PIXELS_PER_METER = 100.0; // assunzione: 100 px = 1 metro
+    static final int SPAWN_X = 80;
+
+    /**
+     * Creates a world and generates its first level. The same seed and level
+     * length always produce the same levels, including after restarts.
+     */
+    GameWorld(long seed, int levelLength) {
+        this(seed, levelLength, DEFAULT_ENEMY_DENSITY);
+    }
+
+    /** As {@link #GameWorld(long, int)}, with {@code enemyDensity} in [0, 1] instead of the default. */
+    GameWorld(long seed, int levelLength, double enemyDensity) {
+        this(seed, levelLength, enemyDensity, null, METERS_TO_COMPLETE, null);
+    }
+
+    /**
+     * As {@link #GameWorld(long, int)}, taking its levels from {@code levels},
+     * which builds them ahead of time off the calling thread; the levels are
+     * the same. If the first level is already queued in {@code levels} (see
+     * {@link LevelProvider#prefetch}), this waits a little for it to be built.
+     */
+    GameWorld(long seed, int levelLength, LevelProvider levels) {
+        this(seed, levelLength, DEFAULT_ENEMY_DENSITY, null, METERS_TO_COMPLETE, levels);
+    }
+
+    /**
+     * Creates a world that plays {@code level} on every run. The run completes
+     * once the player has travelled from the spawn point to the level's flag x.
+     */
+    GameWorld(LevelFile level) {
+        this(0, Math.max(level.levelLength, level.chunkCount() * LevelStreamer.CHUNK_WIDTH), 0, level,
+                (level.flagX - SPAWN_X) / PIXELS_PER_METER, null);
+    }
+
+    private GameWorld(long seed, int levelLength, double enemyDensity, LevelSource authored, double metersToComplete,
+                      LevelProvider provider) {
+        this.levelLength = levelLength;
+        this.enemyDensity = enemyDensity;
+        this.seed = seed;
+        this.rand = new Random(seed);
+        this.authored = authored;
+        this.provider = provider;
+        this.metersToComplete = metersToComplete;
+        this.distanceRule = ScoreLedger.distanceAtLeast(metersToComplete);
+
+        // Player rect
+        player = new Box(SPAWN_X, HEIGHT - 120, PLAYER_WIDTH, PLAYER_HEIGHT);
+        playerBody.add(player.x, player.y, player.width, player.height);
+
+        ledger.addRule(distanceRule);
+        ledger.addRule(ScoreLedger.maxAchievableEquals(5000));
+
+        buildLevel(true);
+    }
+
+    /** Generates a new level (continuing the world's random sequence), or replays the authored one, and resets the run. */
+    void restart() {
+        buildLevel(false);
+    }
+
+    /**
+     * Starts over as {@code new GameWorld(seed, ...)} would, with this world's
+     * level length and enemy density: the same first level and the same
+     * sequence after it. An authored world just restarts its level.
+     */
+    void reset(long seed) {
+        this.seed = seed;
+        rand = new Random(seed);
+        ahead = null;
+        levelsBuilt = 0;
+        buildLevel(true);
+    }
+
+    /** Level length a world actually generates for {@code levelLength}: long enough to reach the flag. */
+    private static int playableLength(int levelLength) {
+        return Math.max(levelLength, (int) (METERS_TO_COMPLETE * PIXELS_PER_METER) + 2000); // margin
+    }
+
+    /** The first level {@code new GameWorld(seed, levelLength, enemyDensity)} plays. */
+    static LevelStreamer firstLevel(long seed, int levelLength, double enemyDensity) {
+        return new LevelStreamer(new Random(seed).nextLong(), playableLength(levelLength), enemyDensity);
+    }
+
+    /** Flag x of a generated level, for exporting it as a {@link LevelFile}. */
+    static int defaultFlagX() {
+        return SPAWN_X + (int) (METERS_TO_COMPLETE * PIXELS_PER_METER);
+    }
+
+    /** {@code starting}: a new world or seed, which may wait for its first level to be built ahead. */
+    private void buildLevel(boolean starting) {
+        platforms.clear();
+        coins.clear();
+        enemies.clear();
+
+        // reset completed flag
+        completed = false;
+
+        // reset flag and distance tracking
+        flagPixelX = -1;
+        startX = 0;
+        maxXReached = 0;
+
+        // Extended ground: ensure it's long enough to reach METERS_TO_COMPLETE
+        int levelLength = authored != null ? this.levelLength : playableLength(this.levelLength);
+        if (platformGrid == null) {
+            // the grids only ever hold the resident chunks, so they are sized to those, not to the level
+            int span = RESIDENT_CHUNKS * LevelStreamer.CHUNK_WIDTH;
+            platformGrid = new SpatialGrid(-1000, span, GRID_CELL);
+            coinGrid = new SpatialGrid(-1000, span, GRID_CELL);
+            enemyGrid = new SpatialGrid(-1000, span, GRID_CELL);
+            physics = new PhysicsStage(GRAVITY, platforms, platformGrid);
+        } else {
+            platformGrid.clear();
+            coinGrid.clear();
+            enemyGrid.clear();
+        }
+
+        // Only the chunks around the camera are generated; the rest streams in and out as the player moves
+        if (authored != null) {
+            level = authored;
+            levelSeed = 0;
+        } else {
+            LevelStreamer generated = new LevelStreamer(rand.nextLong(), levelLength, enemyDensity);
+            levelSeed = generated.levelSeed();
+            levelsBuilt++;
+            if (provider != null) {
+                // a restart never waits: its level was asked for a whole run ago, and a miss streams as cheaply
+                level = provider.level(generated, starting ? LevelProvider.STARTUP_WAIT_NANOS : 0);
+                // a restart plays the next level of the sequence: have it ready by then, but ask
+                // from the next step, so waking the builder isn't part of the restart
+                if (ahead == null) {
+                    ahead = new Random(seed);
+                    for (int i = 0; i < levelsBuilt; i++) ahead.nextLong();
+                }
+                prefetch = new LevelStreamer(ahead.nextLong(), levelLength, enemyDensity);
+            } else {
+                level = generated;
+            }
+        }
+        coinsTaken = new long[RESIDENT_CHUNKS];
+        enemiesTaken = new long[RESIDENT_CHUNKS];
+        takenShared = false;
+        chunksCounted = 0;
+        firstChunk = 0;
+        lastChunk = -1;
+
+        // reset camera and player
+        camX = 0;
+        player.x = SPAWN_X;
+        player.y = HEIGHT - 120;
+        vx = 0;
+        vy = 0;
+        onGround = false;
+        running = true;
+
+        // reset doppio salto
+        jumpsUsed = 0;
+        jumpKeyDown = false;
+
+        runSteps = 0;
+        telemetryRun = -1;
+
+        // reset score and lives; what is left to take grows as chunks are generated for the first time
+        ledger.reset(0, 2, 0, false, 0.0);
+
+        streamChunks();
+        snapInterpolation();
+
+        takeCheckpoint();
+    }
+
+    private void takeCheckpoint() {
+        if (checkpoint == null || checkpointShared) {
+            checkpoint = new Snapshot(levelLength);
+            checkpointShared = false;
+        }
+        checkpointX = player.x;
+        capture(checkpoint, false);
+    }
+
+    /**
+     * Makes the resident chunks exactly those within one chunk of the view and
+     * the player: generates the missing ones and drops the rest.
+     */
+    private void streamChunks() {
+        int minX = Math.min(camX, player.x) - LevelStreamer.CHUNK_WIDTH;
+        int maxX = Math.max(camX + WIDTH, player.x + player.width) + LevelStreamer.CHUNK_WIDTH;
+        int want0 = LevelStreamer.chunkOf(minX);
+        int want1 = Math.min(level.chunkCount() - 1, LevelStreamer.chunkOf(maxX));
+        if (want0 == firstChunk && want1 == lastChunk) return;
+
+        for (int c = firstChunk; c <= lastChunk; c++) {
+            if (c < want0 || c > want1) evictChunk(c);
+        }
+        for (int c = want0; c <= want1; c++) {
+            if (c < firstChunk || c > lastChunk) loadChunk(c);
+        }
+        firstChunk = want0;
+        lastChunk = want1;
+        chunksStreamed++;
+        staticVersion++;
+    }
+
+    /**
+     * Generates chunk {@code c} into the world. The first time a chunk is
+     * generated in a run its points go to the ledger, so what is left to take
+     * never needs the whole level generated up front.
+     */
+    private void loadChunk(int c) {
+        while (chunksCounted < c) { // chunks skipped over are counted without being loaded
+            chunkPoints = 0;
+            level.generate(chunksCounted, pointCounter);
+            countChunk();
+        }
+        if (c >= coinsTaken.length) {
+            int n = Math.max(c + 1, coinsTaken.length * 2);
+            coinsTaken = Arrays.copyOf(coinsTaken, n);
+            enemiesTaken = Arrays.copyOf(enemiesTaken, n);
+            takenShared = false;
+        }
+        loadingChunk = c;
+        chunkPoints = 0;
+        level.generate(c, chunkSink);
+        if (c == chunksCounted) countChunk();
+    }
+
+    private void countChunk() {
+        chunksCounted++;
+        ledger.chunkCounted(chunkPoints, chunksCounted == level.chunkCount());
+    }
+
+    private void evictChunk(int chunk) {
+        evicted.clear();
+        for (int id = 0; id < platforms.size(); id++) {
+            if (LevelStreamer.chunkOf(platforms.get(id).x) == chunk) evicted.add(id);
+        }
+        for (int n = evicted.size() - 1; n >= 0; n--) {
+            removePlatform(evicted.get(n)); // ids were collected in increasing order
+        }
+        for (int id = 0; id < coins.size(); id++) {
+            if (coins.tag[id] >> 6 == chunk) coins.kill(id);
+        }
+        coins.removeKilled(coinGrid);
+        for (int id = 0; id < enemies.size(); id++) {
+            if (enemies.tag[id] >> 6 == chunk) enemies.kill(id);
+        }
+        enemies.removeKilled(enemyGrid);
+    }
+
+    // Entity tags are (chunk << 6 | ordinal in chunk); collected coins and stomped enemies stay gone on reload
+    private final LevelSource.Sink chunkSink = new LevelSource.Sink() {
+        @Override
+        public void platform(int x, int y, int w, int h) {
+            addPlatform(new Box(x, y, w, h));
+        }
+
+        @Override
+        public void coin(int ordinal, int x, int y, int w, int h) {
+            chunkPoints += ScoreLedger.COIN_VALUE;
+            if ((coinsTaken[loadingChunk] & (1L << ordinal)) == 0) {
+                addCoin(x, y, w, h, loadingChunk << 6 | ordinal);
+            }
+        }
+
+        @Override
+        public void enemy(int ordinal, int x, int y, int w, int h, int left, int right) {
+            chunkPoints += ScoreLedger.ENEMY_VALUE;
+            if ((enemiesTaken[loadingChunk] & (1L << ordinal)) == 0) {
+                addEnemy(x, y, w, h, left, right, loadingChunk << 6 | ordinal);
+            }
+        }
+    };
+
+    private final LevelSource.Sink pointCounter = new LevelSource.Sink() {
+        @Override
+        public void platform(int x, int y, int w, int h) {
+        }
+
+        @Override
+        public void coin(int ordinal, int x, int y, int w, int h) {
+            chunkPoints += ScoreLedger.COIN_VALUE;
+        }
+
+        @Override
+        public void enemy(int ordinal, int x, int y, int w, int h, int left, int right) {
+            chunkPoints += ScoreLedger.ENEMY_VALUE;
+        }
+    };
+
+    /** Makes the previous-tick positions equal to the current ones (after teleports). */
+    private void snapInterpolation() {
+        prevCamX = camX;
+        prevPlayerX = player.x;
+        prevPlayerY = player.y;
+    }
+
+    private void addPlatform(Box p) {
+        platformGrid.insert(platforms.size(), p.x, p.width);
+        platforms.add(p);
+    }
+
+    private void addCoin(int x, int y, int w, int h, int tag) {
+        int id = coins.add(x, y, w, h, tag);
+        coinGrid.insert(id, coins.spanX(id), coins.spanWidth(id));
+    }
+
+    private void addEnemy(int x, int y, int w, int h, int left, int right, int tag) {
+        int id = enemies.add(x, y, w, h, left, right, 2, tag);
+        // enemies are indexed by their whole patrol range, so the grid never needs updating as they move
+        enemyGrid.insert(id, enemies.spanX(id), enemies.spanWidth(id));
+    }
+
+    // The remover swaps the last element into the freed slot and renames it in the grid,
+    // so ids stay dense indices. Callers removing several ids must go from highest to lowest.
+    private void removePlatform(int id) {
+        Box p = platforms.get(id);
+        platformGrid.remove(id, p.x, p.width);
+        int last = platforms.size() - 1;
+        if (id != last) {
+            Box moved = platforms.get(last);
+            platformGrid.rename(last, id, moved.x, moved.width);
+            platforms.set(id, moved);
+        }
+        platforms.remove(last);
+    }
+
+    private void applyInput(InputState input) {
+        boolean left = input.isDown(InputState.LEFT);
+        boolean right = input.isDown(InputState.RIGHT);
+        if (left && !right) {
+            vx = -MOVE_SPEED;
+        } else if (right && !left) {
+            vx = MOVE_SPEED;
+        } else {
+            vx = 0;
+        }
+
+        if (input.isDown(InputState.JUMP)) {
+            // doppio salto: permetti fino a MAX_JUMPS salti, evita di ripetere mentre il tasto è mantenuto
+            if (!jumpKeyDown && jumpsUsed < MAX_JUMPS) {
+                vy = JUMP_SPEED;
+                jumpsUsed++;
+                onGround = false;
+            }
+            jumpKeyDown = true;
+        } else {
+            // rilasciando il tasto jump permettiamo la nuova pressione
+            jumpKeyDown = false;
+        }
+    }
+
+    /** Advances the simulation by one fixed step (16 ms of game time) with the given buttons held. */
+    void step(InputState input) {
+        FrameProfiler prof = profiler;
+        if (prof == null) {
+            advance(input);
+            return;
+        }
+        prof.beginStep();
+        advance(input);
+        prof.endStep(platforms.size(), coins.size(), enemies.size());
+    }
+
+    /** Times the phases of every following step into {@code p}; null stops timing. */
+    void setProfiler(FrameProfiler p) {
+        profiler = p;
+    }
+
+    /**
+     * Records the events of every following step into {@code t}, the current
+     * run counting as a new one; null stops recording. The world must be
+     * stepped on the thread that records into {@code t}.
+     */
+    void setTelemetry(Telemetry t) {
+        telemetry = t;
+        telemetryRun = -1;
+    }
+
+    private void emit(int type, long detail) {
+        if (telemetry != null) telemetry.record(telemetryRun, type, runSteps, player.x, player.y, detail);
+    }
+
+    /**
+     * Sets how far beyond the view and the player enemies keep moving every
+     * step. Dormant enemies can't be seen, so the margin only needs to cover
+     * what is drawn around the view.
+     */
+    void setActiveMargin(int px) {
+        if (px < 0) throw new IllegalArgumentException("negative margin " + px);
+        activeMargin = px;
+    }
+
+    private void mark(int phase) {
+        if (profiler != null) profiler.mark(phase);
+    }
+
+    private void advance(InputState input) {
+        if (prefetch != null) {
+            provider.prefetch(prefetch);
+            prefetch = null;
+        }
+        snapInterpolation();
+        if (!running) {
+            return;
+        }
+        runSteps++;
+        if (telemetry != null && telemetryRun < 0) telemetryRun = telemetry.runStarted(levelSeed, player.x, player.y);
+        applyInput(input);
+
+         // salvo la Y precedente del giocatore per rilevare il tipo di collisione con i nemici
+         int prevPlayerY = player.y;
+
+         // Gravity, then the move by the velocity, stopping at platforms (swept, so no speed goes through them);
+         // the physics stage's two halves of a step, so each is timed in its own phase
+         loadPlayerBody();
+         physics.integrate(playerBody);
+         mark(FrameProfiler.INTEGRATE);
+         physics.move(playerBody);
+         storePlayerBody();
+         mark(FrameProfiler.PLATFORMS);
+
+        // Initialize startX on first movement (use player's initial x as origin)
+        if (startX == 0) {
+            startX = player.x;
+            maxXReached = player.x;
+        }
+
+        // Update maxXReached and compute meters traveled (only forward progress counts)
+        if (player.x > maxXReached) {
+            maxXReached = player.x;
+            ledger.travelled((maxXReached - startX) / PIXELS_PER_METER);
+            // non mostrare metri, ma completare il gioco quando raggiunge la soglia in metri
+            if (completeIfMet(ScoreLedger.DISTANCE)) return;
+        }
+
+         // Coins collection
+         coinGrid.query(player.x, player.x + player.width, nearby);
+         for (int n = 0; n < nearby.size(); n++) {
+             int id = nearby.get(n);
+             if (player.intersects(coins.x[id], coins.y[id], coins.w[id], coins.h[id])) {
+                 coins.kill(id);
+                 ownTaken();
+                 coinsTaken[coins.tag[id] >> 6] |= 1L << (coins.tag[id] & 63);
+                 ledger.coinCollected();
+                 emit(Telemetry.COIN, coins.tag[id]);
+             }
+         }
+         coins.removeKilled(coinGrid);
+         mark(FrameProfiler.COINS);
+
+        // dopo la raccolta, controlla se il massimo punteggio raggiungibile è 5000
+        // (solo se punteggio o entità residenti sono cambiati dall'ultimo controllo)
+        if (completeIfMet(ScoreLedger.SCORE | ScoreLedger.REMAINING)) return;
+
+         // Update enemies: permettiamo di "stomp" i nemici se il giocatore li colpisce dall'alto mentre sta cadendo
+         // only enemies near the view or the player move; the others are caught up exactly when they come back
+         int activeMin = Math.min(camX, player.x) - activeMargin;
+         int activeMax = Math.max(camX + WIDTH, player.x + player.width) + activeMargin;
+         enemyGrid.query(activeMin, activeMax, nearby);
+         enemies.updatePatrols(nearby);
+         // only enemies whose patrol range is near the player can touch it; visit them in list order
+         enemyGrid.query(player.x, player.x + player.width, nearby);
+         nearby.sort();
+         for (int n = 0; n < nearby.size(); n++) {
+             int en = nearby.get(n);
+             if (player.intersects(enemies.x[en], enemies.y[en], enemies.w[en], enemies.h[en])) {
+                 int playerBottomPrev = prevPlayerY + player.height;
+                 int enemyTop = enemies.y[en];
+                 // condizione di stomp: il giocatore stava cadendo (vy > 0) e la sua parte inferiore nel frame precedente
+                 // era sopra l'inizio del nemico (quindi ha colpito dall'alto)
+                 if (vy > 0 && playerBottomPrev <= enemyTop + 6) {
+                     // uccidi il nemico (rimosso dopo il ciclo)
+                     enemies.kill(en);
+                     ownTaken();
+                     enemiesTaken[enemies.tag[en] >> 6] |= 1L << (enemies.tag[en] & 63);
+                     // piccolo rimbalzo
+                     vy = JUMP_SPEED / 1.6;
+                     ledger.enemyStomped();
+                     emit(Telemetry.STOMP, enemies.tag[en]);
+                 } else {
+                     // altrimenti il giocatore perde una vita
+                     ledger.died();
+                     emit(Telemetry.LIFE_LOST, enemies.tag[en]);
+                     if (ledger.lives() > 0) {
+                         // respawn dall'ultimo checkpoint: il mondo torna com'era lì, tranne le vite perse
+                         int livesLeft = ledger.lives();
+                         restore(checkpoint);
+                         ledger.setLives(livesLeft);
+                         return;
+                     } else {
+                         running = false;
+                         emit(Telemetry.GAME_OVER, ledger.score());
+                     }
+                 }
+             }
+         }
+         enemies.removeKilled(enemyGrid);
+         mark(FrameProfiler.ENEMIES);
+
+        // dopo la gestione nemici, ricontrolla il massimo raggiungibile (nel caso lo stomp o la morte abbiano cambiato la situazione)
+        if (completeIfMet(ScoreLedger.SCORE | ScoreLedger.REMAINING)) return;
+
+         // Camera follows player, keep player more to the left area
+         int targetCamX = Math.max(0, player.x - 150);
+         // Smooth camera
+         camX += (targetCamX - camX) / 8;
+
+         streamChunks();
+
+         // checkpoint: standing on something, well past the last one, with no enemy patrolling close by
+         if (onGround && player.x >= checkpointX + CHECKPOINT_SPACING) {
+             enemyGrid.query(player.x - CHECKPOINT_CLEARANCE, player.x + player.width + CHECKPOINT_CLEARANCE, nearby);
+             if (nearby.isEmpty()) takeCheckpoint();
+         }
+         mark(FrameProfiler.CAMERA);
+    }
+
+    /**
+     * Ends the run if a completion rule reading one of {@code counters} is now met;
+     * reaching the distance also plants the flag.
+     */
+    private boolean completeIfMet(int counters) {
+        ScoreLedger.Rule met = ledger.check(counters);
+        if (met == null) return false;
+        completed = true;
+        running = false;
+        if (met == distanceRule) placeFlag();
+        emit(Telemetry.COMPLETED, ledger.score());
+        return true;
+    }
+
+    private void placeFlag() {
+        // place flag at exact completion pixel (world coord) but clamp inside its ground segment
+        int desiredFlagX = startX + (int) (metersToComplete * PIXELS_PER_METER);
+        // find the ground segment under the flag (ground is the only geometry at y == HEIGHT - 40)
+        int ground = -1;
+        platformGrid.query(desiredFlagX, desiredFlagX, nearby);
+        for (int n = 0; n < nearby.size(); n++) {
+            Box gp = platforms.get(nearby.get(n));
+            if (gp.y == HEIGHT - 40 && gp.x <= desiredFlagX && desiredFlagX < gp.x + gp.width) {
+                ground = nearby.get(n);
+                break;
+            }
+        }
+        if (ground >= 0) {
+            Box gp = platforms.get(ground);
+            int margin = 20;
+            flagPixelX = Math.max(gp.x + margin, Math.min(desiredFlagX, gp.x + gp.width - margin));
+
+            // Physically split the ground segment into two pieces so the gap becomes collidable
+            int gapHalf = 12;
+            int gapStart = flagPixelX - gapHalf;
+            int gapEnd = flagPixelX + gapHalf;
+            int leftX = gp.x;
+            int leftW = Math.max(0, gapStart - gp.x);
+            int rightX = Math.max(gp.x, gapEnd);
+            int rightW = Math.max(0, gp.x + gp.width - rightX);
+
+            // remove original ground and add left and right pieces (if > 0 width), keeping the grid in sync
+            removePlatform(ground);
+            if (leftW > 0) {
+                addPlatform(new Box(leftX, gp.y, leftW, gp.height));
+            }
+            if (rightW > 0) {
+                addPlatform(new Box(rightX, gp.y, rightW, gp.height));
+            }
+            staticVersion++;
+        } else {
+            flagPixelX = desiredFlagX;
+        }
+    }
+
+    /**
+     * Moves the player by {@code (dx, dy)} against the platforms near its path,
+     * swept by the {@link PhysicsStage} so no velocity tunnels through a
+     * platform. Landing on top sets {@code onGround}.
+     * The collision half of the player's part of {@link #step}, without
+     * gravity; package-private so benchmarks can time it on its own.
+     */
+    void sweepPlayer(int dx, int dy) {
+        loadPlayerBody();
+        physics.move(playerBody, 0, dx, dy);
+        storePlayerBody();
+    }
+
+    /** Copies the player's position and velocity into its body in the {@link PhysicsStage}'s arrays. */
+    private void loadPlayerBody() {
+        Bodies b = playerBody;
+        b.x[0] = player.x;
+        b.y[0] = player.y;
+        b.vx[0] = vx;
+        b.vy[0] = vy;
+    }
+
+    /** Takes the player's body back after the stage moved it; landing on top sets {@code onGround}. */
+    private void storePlayerBody() {
+        Bodies b = playerBody;
+        player.x = b.x[0];
+        player.y = b.y[0];
+        vx = b.vx[0];
+        vy = b.vy[0];
+        onGround = (b.contacts[0] & Bodies.ON_GROUND) != 0;
+        if (onGround) {
+            // quando atterra, azzeriamo il conteggio dei salti per permettere il doppio salto di nuovo
+            jumpsUsed = 0;
+        }
+    }
+
+    /**
+     * Puts the player at rest at {@code x}, at the spawn height, as a
+     * teleport that counts as progress; the next step streams the chunks
+     * around it in. For benchmarks that need the player all over a level.
+     */
+    void placePlayer(int x) {
+        if (startX == 0) {
+            // a run measures its progress from where the player stood before the teleport
+            startX = player.x;
+            maxXReached = player.x;
+        }
+        player.x = x;
+        player.y = HEIGHT - 120;
+        vx = 0;
+        vy = 0;
+        onGround = false;
+        snapInterpolation();
+    }
+
+    /** Physics stage over this world's platforms, for stepping other bodies (e.g. in benchmarks). */
+    PhysicsStage physics() {
+        return physics;
+    }
+
+    // --- snapshots ---
+
+    /**
+     * Frozen copy of all the mutable state of a world, taken by {@link #snapshot()}
+     * and applied by {@link #restore}. Platforms and the level generator are
+     * immutable and shared; entity arrays are shared copy-on-write.
+     */
+    static final class Snapshot {
+        private final int levelLength;
+        private final ArrayList<Box> platforms = new ArrayList<>();
+        private EntityStore coins;
+        private EntityStore enemies;
+        private long[] coinsTaken;
+        private long[] enemiesTaken;
+        private LevelSource level;
+        private long seed;
+        private int levelsBuilt;
+        private int firstChunk, lastChunk, chunksCounted;
+        private int playerX, playerY;
+        private double vx, vy;
+        private boolean onGround, jumpKeyDown;
+        private int jumpsUsed;
+        private int camX;
+        private boolean running, completed;
+        private int score, lives, remaining, flagPixelX;
+        private int startX, maxXReached;
+        private double metersTraveled;
+        private int checkpointX;
+        private Snapshot checkpoint; // the world's respawn point at the time (itself, for a checkpoint)
+
+        private Snapshot(int levelLength) {
+            this.levelLength = levelLength;
+        }
+    }
+
+    /**
+     * Captures the current state. Cheap: nothing is deep-copied up front, the
+     * world copies the entity arrays lazily the next time it writes them.
+     */
+    Snapshot snapshot() {
+        Snapshot s = new Snapshot(levelLength);
+        capture(s, true);
+        return s;
+    }
+
+    /**
+     * Fills {@code s} with the current state. With {@code share} the entity
+     * arrays are shared copy-on-write; otherwise (for checkpoints) they are
+     * copied into arrays the snapshot already owns, which doesn't allocate
+     * when {@code s} is reused.
+     */
+    private void capture(Snapshot s, boolean share) {
+        s.platforms.clear();
+        for (int i = 0; i < platforms.size(); i++) {
+            s.platforms.add(platforms.get(i));
+        }
+        if (share) {
+            s.coins = coins.snapshot();
+            s.enemies = enemies.snapshot();
+            s.coinsTaken = coinsTaken;
+            s.enemiesTaken = enemiesTaken;
+            takenShared = true;
+        } else {
+            if (s.coins == null) s.coins = new EntityStore(coins.size());
+            if (s.enemies == null) s.enemies = new EntityStore(enemies.size());
+            s.coins.copyFrom(coins);
+            s.enemies.copyFrom(enemies);
+            s.coinsTaken = copyInto(coinsTaken, chunksCounted, s.coinsTaken);
+            s.enemiesTaken = copyInto(enemiesTaken, chunksCounted, s.enemiesTaken);
+        }
+        s.level = level;
+        s.seed = seed;
+        s.levelsBuilt = levelsBuilt;
+        s.firstChunk = firstChunk;
+        s.lastChunk = lastChunk;
+        s.chunksCounted = chunksCounted;
+        s.playerX = player.x;
+        s.playerY = player.y;
+        s.vx = vx;
+        s.vy = vy;
+        s.onGround = onGround;
+        s.jumpKeyDown = jumpKeyDown;
+        s.jumpsUsed = jumpsUsed;
+        s.camX = camX;
+        s.running = running;
+        s.completed = completed;
+        s.score = ledger.score();
+        s.lives = ledger.lives();
+        s.remaining = ledger.remaining();
+        s.flagPixelX = flagPixelX;
+        s.startX = startX;
+        s.maxXReached = maxXReached;
+        s.metersTraveled = ledger.meters();
+        s.checkpointX = checkpointX;
+        if (share) {
+            s.checkpoint = checkpoint;
+            checkpointShared = true;
+        } else {
+            s.checkpoint = s;
+        }
+    }
+
+    /**
+     * Puts the world back in the state of {@code s}, which may have been taken
+     * from any world with the same level length. The snapshot is left intact,
+     * so it can be restored again (e.g. to branch a search several ways).
+     */
+    void restore(Snapshot s) {
+        if (s.levelLength != levelLength) {
+            throw new IllegalArgumentException("snapshot of a world with level length " + s.levelLength
+                    + ", this one has " + levelLength);
+        }
+        // unregister the current entities, then register the snapshot's
+        for (int id = 0; id < platforms.size(); id++) {
+            Box p = platforms.get(id);
+            platformGrid.remove(id, p.x, p.width);
+        }
+        for (int id = 0; id < coins.size(); id++) {
+            coinGrid.remove(id, coins.spanX(id), coins.spanWidth(id));
+        }
+        for (int id = 0; id < enemies.size(); id++) {
+            enemyGrid.remove(id, enemies.spanX(id), enemies.spanWidth(id));
+        }
+        platforms.clear();
+        for (int i = 0; i < s.platforms.size(); i++) {
+            addPlatform(s.platforms.get(i));
+        }
+        coins.copyFrom(s.coins);
+        for (int id = 0; id < coins.size(); id++) {
+            coinGrid.insert(id, coins.spanX(id), coins.spanWidth(id));
+        }
+        enemies.copyFrom(s.enemies);
+        for (int id = 0; id < enemies.size(); id++) {
+            enemyGrid.insert(id, enemies.spanX(id), enemies.spanWidth(id));
+        }
+        if (takenShared) {
+            coinsTaken = null;
+            enemiesTaken = null;
+            takenShared = false;
+        }
+        coinsTaken = copyInto(s.coinsTaken, s.chunksCounted, coinsTaken);
+        enemiesTaken = copyInto(s.enemiesTaken, s.chunksCounted, enemiesTaken);
+
+        level = s.level;
+        if (seed != s.seed || levelsBuilt != s.levelsBuilt) {
+            // bring the level sequence to where it was, so later restarts match too
+            seed = s.seed;
+            rand = new Random(seed);
+            for (int i = 0; i < s.levelsBuilt; i++) rand.nextLong();
+            ahead = null;
+            levelsBuilt = s.levelsBuilt;
+        }
+        firstChunk = s.firstChunk;
+        lastChunk = s.lastChunk;
+        chunksCounted = s.chunksCounted;
+        player.x = s.playerX;
+        player.y = s.playerY;
+        vx = s.vx;
+        vy = s.vy;
+        onGround = s.onGround;
+        jumpKeyDown = s.jumpKeyDown;
+        jumpsUsed = s.jumpsUsed;
+        camX = s.camX;
+        running = s.running;
+        completed = s.completed;
+        flagPixelX = s.flagPixelX;
+        startX = s.startX;
+        maxXReached = s.maxXReached;
+        ledger.reset(s.score, s.lives, s.remaining, chunksCounted == level.chunkCount(), s.metersTraveled);
+        checkpointX = s.checkpointX;
+        if (s.checkpoint != checkpoint) {
+            checkpoint = s.checkpoint;
+            checkpointShared = true;
+        }
+        snapInterpolation(); // a restore is a teleport: don't interpolate across it
+        staticVersion++;
+    }
+
+    /**
+     * Copies the first {@code n} elements of {@code src} (the rest are 0) into
+     * {@code dst}, clearing the rest, if it is long enough, otherwise into a
+     * new array.
+     */
+    private static long[] copyInto(long[] src, int n, long[] dst) {
+        if (dst == null || dst.length < n) return src.clone();
+        System.arraycopy(src, 0, dst, 0, n);
+        Arrays.fill(dst, n, dst.length, 0L);
+        return dst;
+    }
+
+    /** Takes private copies of the taken-bits arrays if a snapshot still shares them. */
+    private void ownTaken() {
+        if (!takenShared) return;
+        coinsTaken = coinsTaken.clone();
+        enemiesTaken = enemiesTaken.clone();
+        takenShared = false;
+    }
+
+    // --- read access for renderers and runners ---
+
+    boolean isRunning() {
+        return running;
+    }
+
+    boolean isCompleted() {
+        return completed;
+    }
+
+    int score() {
+        return ledger.score();
+    }
+
+    /** Score plus the points on every banknote and enemy left in the chunks generated so far, resident or not. */
+    int maxAchievable() {
+        return ledger.maxAchievable();
+    }
+
+    /** Chunks of the level generated so far this run: {@link #maxAchievable} counts their banknotes and enemies. */
+    int chunksCounted() {
+        return chunksCounted;
+    }
+
+    int lives() {
+        return ledger.lives();
+    }
+
+    int camX() {
+        return camX;
+    }
+
+    int prevCamX() {
+        return prevCamX;
+    }
+
+    Box player() {
+        return player;
+    }
+
+    double vx() {
+        return vx;
+    }
+
+    double vy() {
+        return vy;
+    }
+
+    boolean isOnGround() {
+        return onGround;
+    }
+
+    /** Jumps taken since the player last stood on something (up to two, for the double jump). */
+    int jumpsUsed() {
+        return jumpsUsed;
+    }
+
+    int prevPlayerX() {
+        return prevPlayerX;
+    }
+
+    int prevPlayerY() {
+        return prevPlayerY;
+    }
+
+    int flagPixelX() {
+        return flagPixelX;
+    }
+
+    double metersTraveled() {
+        return ledger.meters();
+    }
+
+    int staticVersion() {
+        return staticVersion;
+    }
+
+    /** Times level chunks were streamed in or out; a step that changed it generated content. */
+    long chunksStreamed() {
+        return chunksStreamed;
+    }
+
+    int platformCount() {
+        return platforms.size();
+    }
+
+    Box platform(int id) {
+        return platforms.get(id);
+    }
+
+    /** Ids of the platforms that may overlap {@code [minX, maxX]}. */
+    void queryPlatforms(int minX, int maxX, IntList out) {
+        platformGrid.query(minX, maxX, out);
+    }
+
+    int coinCount() {
+        return coins.size();
+    }
+
+    /** Banknote storage; read-only for callers. */
+    EntityStore coins() {
+        return coins;
+    }
+
+    void queryCoins(int minX, int maxX, IntList out) {
+        coinGrid.query(minX, maxX, out);
+    }
+
+    int enemyCount() {
+        return enemies.size();
+    }
+
+    /** Enemy storage; read-only for callers. */
+    EntityStore enemies() {
+        return enemies;
+    }
+
+    /** Ids of the enemies whose patrol range may overlap {@code [minX, maxX]}. */
+    void queryEnemies(int minX, int maxX, IntList out) {
+        enemyGrid.query(minX, maxX, out);
+    }
+}
@@ -0,0 +1,99 @@
+package games.trial;
+
+/**
+ * Steps {@link GameWorld}s as fast as the CPU allows, with no window and no AWT,
+ * and reports the throughput in ticks per second.
+ *
+ * Each world is played by a trivial scripted bot (run right, jump on a fixed
+ * rhythm) and restarted with a fresh level whenever its run ends, so the
+ * figure covers whole playthroughs including level generation.
+ *
+ * With {@code --profile-out <file>} the measured steps are timed by a
+ * {@link FrameProfiler} whose histograms are written to the file (CSV, or JSON
+ * for a {@code .json} name) at exit.
+ *
+ * Run with: java -cp <classes> games.trial.HeadlessRunner [worlds] [seconds] [--profile-out file]
+ */
+public class HeadlessRunner {
+    private static final int BATCH_TICKS = 10_000; // ticks between clock checks
+
+    private final GameWorld[] worlds;
+    private final InputState input = new InputState();
+    private long ticks;
+    private long playthroughs;
+
+    HeadlessRunner(int worldCount, long seed, int levelLength) {
+        worlds = new GameWorld[worldCount];
+        for (int i = 0; i < worldCount; i++) {
+            worlds[i] = new GameWorld(seed + i, levelLength);
+        }
+    }
+
+    /** Input of the scripted bot at the given tick: always right, jump held 10 of every 40 ticks. */
+    static int botInput(long tick) {
+        int bits = InputState.RIGHT;
+        if (tick % 40 < 10) bits |= InputState.JUMP;
+        return bits;
+    }
+
+    /** Advances every world by {@code count} steps, restarting the ones whose run ended. */
+    void run(int count) {
+        for (int i = 0; i < count; i++) {
+            input.setBits(botInput(ticks / worlds.length));
+            for (GameWorld w : worlds) {
+                w.step(input);
+                if (!w.isRunning()) {
+                    w.restart();
+                    playthroughs++;
+                }
+            }
+            ticks += worlds.length;
+        }
+    }
+
+    long ticks() {
+        return ticks;
+    }
+
+    long playthroughs() {
+        return playthroughs;
+    }
+
+    void setProfiler(FrameProfiler profiler) {
+        for (GameWorld w : worlds) w.setProfiler(profiler);
+    }
+
+    public static void main(String[] args) {
+        java.util.ArrayList<String> positional = new java.util.ArrayList<>();
+        java.io.File profileOut = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--profile-out") && i + 1 < args.length) {
+                profileOut = new java.io.File(args[++i]);
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        int worldCount = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : 16;
+        double seconds = positional.size() > 1 ? Double.parseDouble(positional.get(1)) : 5.0;
+
+        HeadlessRunner runner = new HeadlessRunner(worldCount, 1, GameWorld.DEFAULT_LEVEL_LENGTH);
+        runner.run(BATCH_TICKS); // warm-up
+        if (profileOut != null) {
+            FrameProfiler profiler = new FrameProfiler();
+            profiler.setEnabled(true);
+            profiler.dumpOnExit(profileOut);
+            runner.setProfiler(profiler);
+        }
+        long startTicks = runner.ticks();
+        long startRuns = runner.playthroughs();
+        long t0 = System.nanoTime();
+        long deadline = t0 + (long) (seconds * 1e9);
+        while (System.nanoTime() < deadline) {
+            runner.run(BATCH_TICKS / worldCount + 1);
+        }
+        double elapsed = (System.nanoTime() - t0) / 1e9;
+        long ticks = runner.ticks() - startTicks;
+        System.out.printf("%d worlds, %.2f s: %d ticks, %d playthroughs, %.0f ticks/s%n",
+                worldCount, elapsed, ticks, runner.playthroughs() - startRuns, ticks / elapsed);
+    }
+}
@@ -0,0 +1,73 @@
+package games.trial;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-size log-linear histogram of non-negative longs (nanoseconds, bytes),
+ * in the style of HdrHistogram: each power of two is split into 16 buckets, so
+ * any recorded value is reported within about 6% and recording is a couple of
+ * shifts and an increment, with no allocation.
+ */
+final class Histogram {
+    private static final int SUB_BITS = 4;
+    private static final int SUB = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB;
+
+    private final long[] counts = new long[BUCKETS];
+    private long count;
+    private long sum;
+    private long max;
+
+    private static int bucketOf(long v) {
+        if (v < 2 * SUB) return (int) v;
+        int shift = 63 - Long.numberOfLeadingZeros(v) - SUB_BITS;
+        return shift * SUB + (int) (v >>> shift);
+    }
+
+    /** Largest value that falls in bucket {@code b}. */
+    private static long bucketTop(int b) {
+        if (b < 2 * SUB) return b;
+        int shift = b / SUB - 1;
+        long mantissa = b % SUB + SUB;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    void record(long v) {
+        if (v < 0) v = 0;
+        counts[bucketOf(v)]++;
+        count++;
+        sum += v;
+        if (v > max) max = v;
+    }
+
+    void reset() {
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        max = 0;
+    }
+
+    long count() {
+        return count;
+    }
+
+    long max() {
+        return max;
+    }
+
+    double mean() {
+        return count == 0 ? 0 : sum / (double) count;
+    }
+
+    /** Value at or below which {@code p} percent of the recorded values fall (0 when empty). */
+    long percentile(double p) {
+        if (count == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(p / 100.0 * count));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) return Math.min(bucketTop(b), max);
+        }
+        return max;
+    }
+}
@@ -0,0 +1,44 @@
+package games.trial;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded single-producer/single-consumer queue of ints, lock-free.
+ *
+ * Used to hand key events from the Event Dispatch Thread (the only producer)
+ * to the simulation thread (the only consumer) without locks or boxing.
+ */
+final class InputQueue {
+    private final int[] buffer;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next slot to read, written by the consumer
+    private final AtomicLong tail = new AtomicLong(); // next slot to write, written by the producer
+
+    /** @param capacity rounded up to a power of two */
+    InputQueue(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        buffer = new int[size];
+        mask = size - 1;
+    }
+
+    /** Producer side. Returns false (and drops the value) when the queue is full. */
+    boolean offer(int value) {
+        long t = tail.get();
+        if (t - head.get() == buffer.length) return false;
+        buffer[(int) t & mask] = value;
+        tail.lazySet(t + 1); // publishes the slot write
+        return true;
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    /** Consumer side; call only when {@link #isEmpty()} is false. */
+    int poll() {
+        long h = head.get();
+        int value = buffer[(int) h & mask];
+        head.lazySet(h + 1);
+        return value;
+    }
+}
@@ -0,0 +1,40 @@
+package games.trial;
+
+/**
+ * Buttons held during one simulation step, as a bitmask.
+ * The world derives jump presses from the transitions of {@link #JUMP}.
+ */
+final class InputState {
+    static final int LEFT = 1;
+    static final int RIGHT = 1 << 1;
+    static final int JUMP = 1 << 2;
+
+    private int bits;
+
+    InputState() {
+    }
+
+    InputState(int bits) {
+        this.bits = bits;
+    }
+
+    int bits() {
+        return bits;
+    }
+
+    void setBits(int bits) {
+        this.bits = bits;
+    }
+
+    boolean isDown(int button) {
+        return (bits & button) != 0;
+    }
+
+    void set(int button, boolean down) {
+        if (down) {
+            bits |= button;
+        } else {
+            bits &= ~button;
+        }
+    }
+}
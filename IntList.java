@@ -0,0 +1,67 @@
+package games.trial;
+
+import java.util.Arrays;
+
+/**
+ * Minimal growable list of primitive ints. Used as a reusable output buffer
+ * for spatial queries so the per-tick paths don't box or allocate.
+ */
+final class IntList {
+    private int[] data;
+    private int size;
+
+    IntList() {
+        this(16);
+    }
+
+    IntList(int capacity) {
+        data = new int[Math.max(1, capacity)];
+    }
+
+    void add(int v) {
+        if (size == data.length) {
+            data = Arrays.copyOf(data, size * 2);
+        }
+        data[size++] = v;
+    }
+
+    int get(int i) {
+        return data[i];
+    }
+
+    void set(int i, int v) {
+        data[i] = v;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    int indexOf(int v) {
+        for (int i = 0; i < size; i++) {
+            if (data[i] == v) return i;
+        }
+        return -1;
+    }
+
+    /** Removes the element at {@code i} by moving the last element into its slot (order is not kept). */
+    void swapRemove(int i) {
+        data[i] = data[--size];
+    }
+
+    void truncate(int newSize) {
+        size = newSize;
+    }
+
+    void sort() {
+        Arrays.sort(data, 0, size);
+    }
+}
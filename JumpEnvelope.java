@@ -0,0 +1,162 @@
+package games.trial;
+
+import java.util.Arrays;
+
+/**
+ * Every way a jump can go, worked out once from the physics constants, so a
+ * level can be checked for reachability without simulating it.
+ *
+ * A variant is one press schedule: a single jump, or a jump followed by the
+ * second one {@code k} steps in (the key has to be released in between, so
+ * {@code k >= 3}). Its trajectory is the feet height after each step,
+ * relative to the surface jumped from, integrated exactly as
+ * {@link GameWorld#step} does (velocity set by the press, gravity added,
+ * the rounded velocity moved) but with nothing in the way. Horizontally the
+ * player can cover up to {@link #stepRight} px a step to the right and
+ * {@link #stepLeft} to the left (the speed rounds differently each way), and
+ * any less, in any step.
+ *
+ * For each variant and each height difference in
+ * {@code [-range, range]} two step counts are tabulated: when the feet
+ * first get that high, and when they next come down onto that height, i.e.
+ * when a jump lands on a surface that much above (or below) the start; and
+ * for each height, the latest step any variant passes through it.
+ */
+final class JumpEnvelope {
+    static final JumpEnvelope DEFAULT = new JumpEnvelope(GameWorld.GRAVITY, GameWorld.JUMP_SPEED,
+            GameWorld.MOVE_SPEED, GameWorld.MAX_JUMPS, GameWorld.HEIGHT);
+
+    private static final int SECOND_PRESS = 3; // first step a second press can happen (press, release, press)
+
+    final int stepRight;
+    final int stepLeft;
+    final int range;
+    private final int[][] heights; // per variant: feet height after step t (t = 0 is the start)
+    private final int[] firstAbove; // [variant * span + dh + range], -1 if never
+    private final int[] landing;
+    private final int[] latest; // [dh + range]: last step any variant has its feet exactly there, -1 if none
+    private final int span;
+    private final int maxRise;
+    private final int maxAirSteps;
+
+    /**
+     * @param range largest height difference looked up, and how far below
+     *              the start a trajectory is followed
+     */
+    JumpEnvelope(double gravity, double jumpSpeed, double moveSpeed, int maxJumps, int range) {
+        if (maxJumps < 1 || maxJumps > 2) throw new IllegalArgumentException("only single and double jumps are modelled: " + maxJumps);
+        this.range = range;
+        stepRight = (int) Math.round(moveSpeed);
+        stepLeft = -(int) Math.round(-moveSpeed);
+
+        int[] single = trajectory(gravity, jumpSpeed, range, -1);
+        int count = maxJumps == 1 ? 1 : single.length - SECOND_PRESS + 1;
+        heights = new int[count][];
+        heights[0] = single;
+        for (int v = 1; v < count; v++) heights[v] = trajectory(gravity, jumpSpeed, range, SECOND_PRESS + v - 1);
+
+        span = 2 * range + 1;
+        firstAbove = new int[count * span];
+        landing = new int[count * span];
+        latest = new int[span];
+        Arrays.fill(latest, -1);
+        int rise = 0, air = 0;
+        for (int v = 0; v < count; v++) {
+            int[] h = heights[v];
+            air = Math.max(air, h.length - 1);
+            for (int t = 0; t < h.length; t++) {
+                rise = Math.max(rise, h[t]);
+                if (t > 0 && h[t] >= -range) latest[h[t] + range] = Math.max(latest[h[t] + range], t);
+            }
+            for (int dh = -range; dh <= range; dh++) {
+                int over = -1;
+                for (int t = 0; t < h.length && over < 0; t++) {
+                    if (h[t] >= dh) over = t;
+                }
+                int land = -1;
+                if (over >= 0) {
+                    for (int t = over + 1; t < h.length && land < 0; t++) {
+                        if (h[t] < h[t - 1] && h[t] <= dh) land = t;
+                    }
+                }
+                firstAbove[v * span + dh + range] = over;
+                landing[v * span + dh + range] = land;
+            }
+        }
+        maxRise = rise;
+        maxAirSteps = air;
+    }
+
+    /** Feet heights of a jump pressed at step 1 and, if {@code second > 0}, again at step {@code second}. */
+    private static int[] trajectory(double gravity, double jumpSpeed, int range, int second) {
+        IntList h = new IntList(64);
+        h.add(0);
+        double vy = 0;
+        int y = 0;
+        for (int t = 1; y >= -range; t++) {
+            if (t == 1 || t == second) vy = jumpSpeed;
+            vy += gravity;
+            y -= (int) Math.round(vy);
+            h.add(y);
+        }
+        int[] out = new int[h.size()];
+        for (int i = 0; i < out.length; i++) out[i] = h.get(i);
+        return out;
+    }
+
+    int variants() {
+        return heights.length;
+    }
+
+    /** Highest the feet get above the start, over all variants. */
+    int maxRise() {
+        return maxRise;
+    }
+
+    /** Longest any variant stays in the air before falling {@link #range} below the start. */
+    int maxAirSteps() {
+        return maxAirSteps;
+    }
+
+    /** Steps variant {@code v} is followed for; {@link #height} is defined up to this. */
+    int steps(int v) {
+        return heights[v].length - 1;
+    }
+
+    int height(int v, int t) {
+        return heights[v][t];
+    }
+
+    /** First step at which variant {@code v}'s feet are at least {@code dh} above the start; -1 if never. */
+    int firstAbove(int v, int dh) {
+        if (dh <= -range) return 0;
+        if (dh > range) return -1;
+        return firstAbove[v * span + dh + range];
+    }
+
+    /** Step at which variant {@code v} comes down onto height {@code dh} after rising to it; -1 if never. */
+    int landing(int v, int dh) {
+        if (dh < -range || dh > range) return -1;
+        return landing[v * span + dh + range];
+    }
+
+    /**
+     * Latest step at which some variant has its feet exactly {@code dh} above
+     * the start; -1 if none does. Horizontal reach only grows with time, so
+     * this is the best chance to be anywhere at that height.
+     */
+    int latestAt(int dh) {
+        if (dh < -range || dh > range) return -1;
+        return latest[dh + range];
+    }
+
+    /**
+     * Whether the player can get from x in {@code [a0, a1]} to x in
+     * {@code [b0, b1]} in {@code steps} steps.
+     */
+    boolean canCover(int a0, int a1, int b0, int b1, int steps) {
+        if (b0 > a1) return b0 - a1 <= (long) stepRight * steps;
+        if (b1 < a0) return a0 - b1 <= (long) stepLeft * steps;
+        return true;
+    }
+}
@@ -0,0 +1,52 @@
+package games.trial;
+
+import java.awt.event.KeyEvent;
+
+/**
+ * Turns key presses and releases into the {@link InputState} a {@link GameWorld}
+ * steps with. Must be used from the thread that steps the world.
+ *
+ * A jump press is held until at least one step has seen it, so tapping the key
+ * between two steps still jumps, as it did when keys acted immediately.
+ */
+final class KeyboardInput {
+    private final InputState state = new InputState();
+    private boolean jumpSeen = true;        // the current jump press has been stepped with
+    private boolean jumpReleased = false;   // released before any step saw the press
+
+    /** Applies a key event; returns true for a restart request (R). */
+    boolean apply(int kc, boolean pressed) {
+        if (kc == KeyEvent.VK_LEFT) {
+            state.set(InputState.LEFT, pressed);
+        } else if (kc == KeyEvent.VK_RIGHT) {
+            state.set(InputState.RIGHT, pressed);
+        } else if (kc == KeyEvent.VK_SPACE || kc == KeyEvent.VK_UP) {
+            if (pressed) {
+                if (!state.isDown(InputState.JUMP)) jumpSeen = false;
+                state.set(InputState.JUMP, true);
+                jumpReleased = false;
+            } else if (jumpSeen) {
+                state.set(InputState.JUMP, false);
+            } else {
+                jumpReleased = true;
+            }
+        } else if (kc == KeyEvent.VK_R) {
+            return pressed;
+        }
+        return false;
+    }
+
+    /** The buttons to step with now. */
+    InputState state() {
+        return state;
+    }
+
+    /** Call after each step that used {@link #state()}. */
+    void stepped() {
+        jumpSeen = true;
+        if (jumpReleased) {
+            state.set(InputState.JUMP, false);
+            jumpReleased = false;
+        }
+    }
+}
@@ -0,0 +1,325 @@
+package games.trial;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An authored level in a compact binary file, played straight from a
+ * memory mapping.
+ *
+ * The file is all big-endian ints, so it is read through one
+ * {@link IntBuffer} view of {@link FileChannel#map}: opening it only checks
+ * the header, the chunk index and the enemies' patrol ranges, and a chunk's
+ * objects are read from the mapping when the world streams that chunk in. Nothing is parsed or allocated per object up front,
+ * so even a level with hundreds of thousands of objects opens in
+ * milliseconds and only the resident chunks ever live on the heap.
+ *
+ * Layout: a header (magic "SMLV", version, chunk width, level length, flag x,
+ * chunk count, platform, banknote and enemy counts); a chunk index of
+ * {@code chunks + 1} triples giving the first platform, banknote and enemy of
+ * each chunk; then the columns: platform x, y, w, h; banknote x, y, w, h;
+ * enemy x, y, w, h, left, right. Objects are grouped by the chunk their x
+ * falls in, so each chunk is a contiguous range of every column.
+ *
+ * Files are written with a {@link Builder}, which is also a
+ * {@link LevelSource.Sink}, so a procedural level can be exported chunk by
+ * chunk; {@link Builder#build} lays out the same ints on the heap instead,
+ * which is how {@link LevelProvider} keeps generated levels ready to play. Run {@code java -cp <classes> games.trial.LevelFile <seed> <level length> <file>}
+ * to export one.
+ */
+final class LevelFile implements LevelSource {
+    private static final int MAGIC = 0x534D4C56; // "SMLV"
+    private static final int VERSION = 1;
+    private static final int HEADER_INTS = 9;
+    private static final int MAX_PER_CHUNK = 64; // coin and enemy ordinals fit a long bitset
+
+    /** Level length, as for a generated level. */
+    final int levelLength;
+    /** World x the player must reach to complete the level. */
+    final int flagX;
+    private final IntBuffer data;
+    private final int chunks;
+    private final int platformCount, coinCount, enemyCount;
+    private final int platformBase, coinBase, enemyBase; // first int of each section's first column
+
+    private LevelFile(IntBuffer data) throws IOException {
+        if (data.limit() < HEADER_INTS || data.get(0) != MAGIC) throw new IOException("not a level file");
+        if (data.get(1) != VERSION) throw new IOException("unsupported level version " + data.get(1));
+        if (data.get(2) != LevelStreamer.CHUNK_WIDTH) {
+            throw new IOException("level chunk width " + data.get(2) + ", expected " + LevelStreamer.CHUNK_WIDTH);
+        }
+        this.data = data;
+        levelLength = data.get(3);
+        flagX = data.get(4);
+        chunks = data.get(5);
+        platformCount = data.get(6);
+        coinCount = data.get(7);
+        enemyCount = data.get(8);
+        if (chunks < 1 || platformCount < 0 || coinCount < 0 || enemyCount < 0
+                || HEADER_INTS + (chunks + 1L) * 3 + platformCount * 4L + coinCount * 4L + enemyCount * 6L != data.limit()) {
+            throw new IOException("corrupt or truncated level file");
+        }
+        platformBase = HEADER_INTS + (chunks + 1) * 3;
+        coinBase = platformBase + platformCount * 4;
+        enemyBase = coinBase + coinCount * 4;
+        checkIndex();
+        checkEnemies();
+    }
+
+    /**
+     * Checks the chunk index once, so {@link #generate} can trust it: each
+     * column starts at 0, never decreases, ends at its object count, and no
+     * chunk has more banknotes or enemies than its ordinal bitsets hold.
+     */
+    private void checkIndex() throws IOException {
+        int[] count = {platformCount, coinCount, enemyCount};
+        for (int k = 0; k < 3; k++) {
+            int prev = data.get(HEADER_INTS + k);
+            if (prev != 0) throw new IOException("corrupt level file");
+            for (int c = 1; c <= chunks; c++) {
+                int next = data.get(HEADER_INTS + c * 3 + k);
+                if (next < prev || next > count[k] || (k > 0 && next - prev > MAX_PER_CHUNK)) {
+                    throw new IOException("corrupt level file");
+                }
+                prev = next;
+            }
+            if (prev != count[k]) throw new IOException("corrupt level file");
+        }
+    }
+
+    /**
+     * Checks that every enemy starts inside its patrol range, which dormant
+     * enemies are fast-forwarded around in closed form (see
+     * {@link EntityStore}); one outside it would come back somewhere else.
+     */
+    private void checkEnemies() throws IOException {
+        int n = enemyCount;
+        for (int i = 0; i < n; i++) {
+            int col = enemyBase + i;
+            int x = data.get(col), left = data.get(col + 4 * n), right = data.get(col + 5 * n);
+            if (left > x || x > right) throw new IOException("corrupt level file");
+        }
+    }
+
+    /** Maps {@code file}; the mapping stays valid after this returns and lives as long as the level. */
+    static LevelFile load(Path file) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+            if (ch.size() % 4 != 0 || ch.size() > Integer.MAX_VALUE) throw new IOException("not a level file");
+            return new LevelFile(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()).asIntBuffer());
+        }
+    }
+
+    @Override
+    public int chunkCount() {
+        return chunks;
+    }
+
+    int platformCount() {
+        return platformCount;
+    }
+
+    int coinCount() {
+        return coinCount;
+    }
+
+    int enemyCount() {
+        return enemyCount;
+    }
+
+    @Override
+    public void generate(int chunk, Sink sink) {
+        IntBuffer d = data;
+        int at = HEADER_INTS + chunk * 3;
+        int p0 = d.get(at), c0 = d.get(at + 1), e0 = d.get(at + 2);
+        int p1 = d.get(at + 3), c1 = d.get(at + 4), e1 = d.get(at + 5);
+        int n = platformCount;
+        for (int i = p0; i < p1; i++) {
+            int col = platformBase + i;
+            sink.platform(d.get(col), d.get(col + n), d.get(col + 2 * n), d.get(col + 3 * n));
+        }
+        n = coinCount;
+        for (int i = c0; i < c1; i++) {
+            int col = coinBase + i;
+            sink.coin(i - c0, d.get(col), d.get(col + n), d.get(col + 2 * n), d.get(col + 3 * n));
+        }
+        n = enemyCount;
+        for (int i = e0; i < e1; i++) {
+            int col = enemyBase + i;
+            sink.enemy(i - e0, d.get(col), d.get(col + n), d.get(col + 2 * n), d.get(col + 3 * n),
+                    d.get(col + 4 * n), d.get(col + 5 * n));
+        }
+    }
+
+    /**
+     * Collects a level's objects in any order and writes them as a level file.
+     * Ordinals passed to the {@link Sink} methods are ignored; objects are
+     * numbered per chunk on writing.
+     */
+    static final class Builder implements Sink {
+        private final int levelLength;
+        private final int flagX;
+        private final int minChunks;
+        // one row per object: x, y, w, h (and left, right for enemies)
+        private final IntList platforms = new IntList();
+        private final IntList coins = new IntList();
+        private final IntList enemies = new IntList();
+
+        Builder(int levelLength, int flagX) {
+            this(levelLength, flagX, 1);
+        }
+
+        /** As {@link #Builder(int, int)}, with at least {@code minChunks} chunks even if the last ones are empty. */
+        Builder(int levelLength, int flagX, int minChunks) {
+            this.levelLength = levelLength;
+            this.flagX = flagX;
+            this.minChunks = Math.max(1, minChunks);
+        }
+
+        @Override
+        public void platform(int x, int y, int w, int h) {
+            platforms.add(x);
+            platforms.add(y);
+            platforms.add(w);
+            platforms.add(h);
+        }
+
+        @Override
+        public void coin(int ordinal, int x, int y, int w, int h) {
+            coins.add(x);
+            coins.add(y);
+            coins.add(w);
+            coins.add(h);
+        }
+
+        /** @throws IllegalArgumentException unless {@code left <= x <= right} */
+        @Override
+        public void enemy(int ordinal, int x, int y, int w, int h, int left, int right) {
+            if (left > x || x > right) {
+                throw new IllegalArgumentException("enemy at x " + x + " outside its patrol range [" + left + ", " + right + "]");
+            }
+            enemies.add(x);
+            enemies.add(y);
+            enemies.add(w);
+            enemies.add(h);
+            enemies.add(left);
+            enemies.add(right);
+        }
+
+        /**
+         * Writes the level to {@code file}.
+         *
+         * @throws IllegalArgumentException if a chunk holds more than 64 banknotes or 64 enemies
+         */
+        void write(Path file) throws IOException {
+            ByteBuffer bytes = encode(ByteOrder.BIG_ENDIAN);
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (bytes.hasRemaining()) ch.write(bytes);
+            }
+        }
+
+        /**
+         * The level as an in-memory level file: immutable, so any number of
+         * worlds and threads can play it at once.
+         *
+         * @throws IllegalArgumentException if a chunk holds more than 64 banknotes or 64 enemies
+         */
+        LevelFile build() {
+            try {
+                return new LevelFile(encode(ByteOrder.nativeOrder()).asIntBuffer()); // no byte swapping on reads
+            } catch (IOException e) {
+                throw new IllegalStateException("built a level file that doesn't read back", e);
+            }
+        }
+
+        private ByteBuffer encode(ByteOrder order) {
+            int chunks = minChunks;
+            chunks = Math.max(chunks, lastChunk(platforms, 4) + 1);
+            chunks = Math.max(chunks, lastChunk(coins, 4) + 1);
+            chunks = Math.max(chunks, lastChunk(enemies, 6) + 1);
+            int platformCount = platforms.size() / 4;
+            int coinCount = coins.size() / 4;
+            int enemyCount = enemies.size() / 6;
+            int[] platformStart = chunkStarts(platforms, 4, chunks, Integer.MAX_VALUE, "platforms");
+            int[] coinStart = chunkStarts(coins, 4, chunks, MAX_PER_CHUNK, "banknotes");
+            int[] enemyStart = chunkStarts(enemies, 6, chunks, MAX_PER_CHUNK, "enemies");
+
+            long ints = HEADER_INTS + (chunks + 1) * 3L + platformCount * 4L + coinCount * 4L + enemyCount * 6L;
+            if (ints * 4 > Integer.MAX_VALUE) throw new IllegalArgumentException("level too large for one mapping");
+            ByteBuffer bytes = ByteBuffer.allocate((int) ints * 4).order(order);
+            IntBuffer out = bytes.asIntBuffer();
+            out.put(MAGIC).put(VERSION).put(LevelStreamer.CHUNK_WIDTH).put(levelLength).put(flagX)
+                    .put(chunks).put(platformCount).put(coinCount).put(enemyCount);
+            for (int c = 0; c <= chunks; c++) {
+                out.put(platformStart[c]).put(coinStart[c]).put(enemyStart[c]);
+            }
+            putColumns(out, platforms, 4, chunks, platformStart);
+            putColumns(out, coins, 4, chunks, coinStart);
+            putColumns(out, enemies, 6, chunks, enemyStart);
+            return bytes;
+        }
+
+        private static int lastChunk(IntList rows, int stride) {
+            int last = -1;
+            for (int i = 0; i < rows.size(); i += stride) last = Math.max(last, LevelStreamer.chunkOf(rows.get(i)));
+            return last;
+        }
+
+        /** Index of each chunk's first object once grouped by chunk, plus the total at {@code [chunks]}. */
+        private static int[] chunkStarts(IntList rows, int stride, int chunks, int maxPerChunk, String what) {
+            int[] start = new int[chunks + 1];
+            for (int i = 0; i < rows.size(); i += stride) start[LevelStreamer.chunkOf(rows.get(i)) + 1]++;
+            for (int c = 0; c < chunks; c++) {
+                if (start[c + 1] > maxPerChunk) {
+                    throw new IllegalArgumentException("chunk " + c + " has " + start[c + 1] + " " + what
+                            + ", at most " + maxPerChunk + " allowed");
+                }
+                start[c + 1] += start[c];
+            }
+            return start;
+        }
+
+        /** Writes the rows column by column, grouped by chunk and otherwise in the order they came. */
+        private static void putColumns(IntBuffer out, IntList rows, int stride, int chunks, int[] start) {
+            int n = rows.size() / stride;
+            int[] order = new int[n];
+            int[] next = new int[chunks];
+            System.arraycopy(start, 0, next, 0, chunks);
+            for (int r = 0; r < n; r++) {
+                order[next[LevelStreamer.chunkOf(rows.get(r * stride))]++] = r;
+            }
+            for (int col = 0; col < stride; col++) {
+                for (int i = 0; i < n; i++) out.put(rows.get(order[i] * stride + col));
+            }
+        }
+    }
+
+    /** Exports the procedural level a world with this seed and level length plays first. */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 3) {
+            System.out.println("usage: LevelFile <seed> <level length> <file>");
+            return;
+        }
+        long seed = Long.parseLong(args[0]);
+        int length = Integer.parseInt(args[1]);
+        Path file = Paths.get(args[2]);
+
+        long t0 = System.nanoTime();
+        LevelStreamer streamer = GameWorld.firstLevel(seed, length, GameWorld.DEFAULT_ENEMY_DENSITY);
+        Builder builder = new Builder(length, GameWorld.defaultFlagX());
+        for (int c = 0; c < streamer.chunkCount(); c++) streamer.generate(c, builder);
+        builder.write(file);
+        long t1 = System.nanoTime();
+        LevelFile level = load(file);
+        long t2 = System.nanoTime();
+        System.out.printf("%s: %d chunks, %d platforms, %d banknotes, %d enemies; written in %.1f ms, mapped in %.3f ms%n",
+                file, level.chunkCount(), level.platformCount(), level.coinCount(), level.enemyCount(),
+                (t1 - t0) / 1e6, (t2 - t1) / 1e6);
+    }
+}
@@ -0,0 +1,253 @@
+package games.trial;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generated levels built ahead of time on a background thread, so a world
+ * that starts or restarts swaps in a level that is ready instead of running
+ * the generator for each chunk as the player gets to it.
+ *
+ * A level is built whole into an in-memory {@link LevelFile}, which is
+ * immutable, so any number of worlds, snapshots and threads can share it,
+ * and kept in a small LRU cache keyed by the {@link LevelStreamer} that
+ * describes it (level seed, length, enemy density). A world asks for the
+ * level it will play after the current one with {@link #prefetch} as soon
+ * as the current one starts, and recently played levels stay cached for
+ * restarts on the same seed.
+ *
+ * A level that isn't ready when {@link #level} asks for it is a miss: the
+ * world gets the streamer itself, which generates the same chunks on
+ * demand as it always did, so nothing waits for the background thread; the
+ * level is built for next time. A world starting up may instead join the
+ * build of its first level, if it was already queued, for a bounded time.
+ */
+final class LevelProvider implements AutoCloseable {
+    static final int DEFAULT_CAPACITY = 8; // levels kept; a default-length level is a few KB
+    static final long STARTUP_WAIT_NANOS = 50_000_000L; // a starting world waits this long at most for its queued level
+
+    private final int capacity;
+    private final ExecutorService builder;
+    // guarded by this; the builder notifies on it when a level is done
+    private final LinkedHashMap<Key, LevelFile> cache;
+    private final HashSet<Key> pending = new HashSet<>();
+    private long hits;
+    private long misses;
+    private long built;
+    private final Histogram buildTime = new Histogram();
+
+    /** What identifies a generated level. */
+    private static final class Key {
+        final long seed;
+        final int end;
+        final double density;
+
+        Key(LevelStreamer level) {
+            seed = level.levelSeed();
+            end = level.levelEnd();
+            density = level.enemyDensity();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key k && k.seed == seed && k.end == end && Double.compare(k.density, density) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(seed) * 31 + end * 17 + Double.hashCode(density);
+        }
+    }
+
+    LevelProvider(int capacity) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity " + capacity);
+        this.capacity = capacity;
+        cache = new LinkedHashMap<>(capacity * 2, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, LevelFile> eldest) {
+                return size() > LevelProvider.this.capacity;
+            }
+        };
+        builder = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "level-builder");
+            t.setDaemon(true);
+            t.setPriority(Thread.NORM_PRIORITY - 1); // behind the game loop and the EDT
+            return t;
+        });
+    }
+
+    LevelProvider() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * The level {@code generated} describes: built and ready if it is cached,
+     * otherwise {@code generated} itself, with the level queued for building.
+     */
+    LevelSource level(LevelStreamer generated) {
+        return level(generated, 0);
+    }
+
+    /**
+     * As {@link #level(LevelStreamer)}, but if the level is already queued or
+     * being built, waits up to {@code waitNanos} for it to be done first.
+     */
+    LevelSource level(LevelStreamer generated, long waitNanos) {
+        Key key = new Key(generated);
+        synchronized (this) {
+            LevelFile ready = cache.get(key);
+            if (ready == null && waitNanos > 0 && pending.contains(key)) ready = await(key, waitNanos);
+            if (ready != null) {
+                hits++;
+                return ready;
+            }
+            misses++;
+            queue(key, generated);
+        }
+        return generated;
+    }
+
+    /** Waits until {@code key} is built (and returns it), is given up, or {@code nanos} have passed (null). */
+    private LevelFile await(Key key, long nanos) {
+        long deadline = System.nanoTime() + nanos;
+        try {
+            LevelFile ready;
+            while ((ready = cache.get(key)) == null && pending.contains(key)) {
+                long left = deadline - System.nanoTime();
+                if (left <= 0) return null;
+                TimeUnit.NANOSECONDS.timedWait(this, left);
+            }
+            return ready;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    /** Queues {@code generated} for building in the background, unless it is cached or already queued. */
+    void prefetch(LevelStreamer generated) {
+        Key key = new Key(generated);
+        synchronized (this) {
+            if (!cache.containsKey(key)) queue(key, generated);
+        }
+    }
+
+    private void queue(Key key, LevelStreamer generated) {
+        if (pending.add(key)) builder.execute(() -> build(key, generated));
+    }
+
+    private void build(Key key, LevelStreamer generated) {
+        long t0 = System.nanoTime();
+        LevelFile level;
+        try {
+            LevelFile.Builder b = new LevelFile.Builder(generated.levelEnd(), GameWorld.defaultFlagX(), generated.chunkCount());
+            for (int c = 0; c < generated.chunkCount(); c++) generated.generate(c, b);
+            level = b.build();
+        } catch (IllegalArgumentException e) {
+            // too many objects in a chunk for a level file: such a level keeps streaming from its generator
+            synchronized (this) {
+                pending.remove(key);
+                notifyAll();
+            }
+            return;
+        }
+        long elapsed = System.nanoTime() - t0;
+        synchronized (this) {
+            pending.remove(key);
+            cache.put(key, level);
+            built++;
+            buildTime.record(elapsed);
+            notifyAll();
+        }
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    /** Share of {@link #level} calls that found the level ready; 0 before the first. */
+    synchronized double hitRate() {
+        return hits + misses == 0 ? 0 : hits / (double) (hits + misses);
+    }
+
+    /** Levels built in the background so far. */
+    synchronized long levelsBuilt() {
+        return built;
+    }
+
+    /** Time one background build took at percentile {@code p}, in nanoseconds. */
+    synchronized long buildNanos(double p) {
+        return buildTime.percentile(p);
+    }
+
+    synchronized int size() {
+        return cache.size();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format("%d hits, %d misses (%.1f%% hit rate), %d levels built in %.2f ms mean, %.2f ms p99, %d cached",
+                hits, misses, hitRate() * 100, built, buildTime.mean() / 1e6, buildTime.percentile(99) / 1e6, cache.size());
+    }
+
+    /** Stops the background thread; levels already handed out stay playable. */
+    @Override
+    public void close() {
+        builder.shutdownNow();
+    }
+
+    /**
+     * Restart benchmark: plays a world many times, running right for a while,
+     * idling a moment on the game-over screen and restarting, with levels
+     * generated inline and then from a provider. Prints the time of the
+     * restarts and of the steps that stream chunks in, then the provider's
+     * metrics.
+     *
+     * Run with: java -cp <classes> games.trial.LevelProvider [restarts] [level length]
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int restarts = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int length = args.length > 1 ? Integer.parseInt(args[1]) : GameWorld.DEFAULT_LEVEL_LENGTH;
+        System.out.printf("%d restarts, level length %d; times in us%n", restarts, length);
+        System.out.printf("%-9s %11s %11s %11s %13s %13s%n", "levels", "restart p50", "restart p99", "restart max",
+                "streaming p50", "streaming p99");
+        for (int round = 0; round < 2; round++) { // the first round warms up
+            for (boolean provided : new boolean[]{false, true}) {
+                LevelProvider levels = provided ? new LevelProvider() : null;
+                if (provided) levels.prefetch(GameWorld.firstLevel(1, length, GameWorld.DEFAULT_ENEMY_DENSITY));
+                GameWorld world = provided ? new GameWorld(1, length, levels) : new GameWorld(1, length);
+                InputState right = new InputState(InputState.RIGHT);
+                Histogram restart = new Histogram();
+                Histogram streaming = new Histogram();
+                for (int r = 0; r < restarts; r++) {
+                    for (int s = 0; s < 600 && world.isRunning(); s++) {
+                        long streamed = world.chunksStreamed();
+                        long t0 = System.nanoTime();
+                        world.step(right);
+                        long t1 = System.nanoTime();
+                        if (world.chunksStreamed() != streamed) streaming.record(t1 - t0);
+                    }
+                    Thread.sleep(2);
+                    long t0 = System.nanoTime();
+                    world.restart();
+                    restart.record(System.nanoTime() - t0);
+                }
+                if (round == 1) {
+                    System.out.printf("%-9s %11.1f %11.1f %11.1f %13.1f %13.1f%n", provided ? "provider" : "inline",
+                            restart.percentile(50) / 1e3, restart.percentile(99) / 1e3, restart.max() / 1e3,
+                            streaming.percentile(50) / 1e3, streaming.percentile(99) / 1e3);
+                    if (provided) System.out.println(levels);
+                }
+                if (levels != null) levels.close();
+            }
+        }
+    }
+}
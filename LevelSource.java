@@ -0,0 +1,30 @@
+package games.trial;
+
+/**
+ * Where a {@link GameWorld} gets its level from, one chunk at a time: the
+ * procedural {@link LevelStreamer} or an authored {@link LevelFile}.
+ *
+ * Chunk {@code c} holds the objects starting in world x
+ * {@code [c * CHUNK_WIDTH, (c + 1) * CHUNK_WIDTH)} (see
+ * {@link LevelStreamer#chunkOf}). A source must hand out the same objects
+ * in the same order every time a chunk is asked for, since chunks are
+ * dropped and loaded again as the player moves; and it must not change
+ * afterwards, since worlds and their snapshots share it.
+ */
+interface LevelSource {
+
+    /** Receives the objects of a chunk, in order. */
+    interface Sink {
+        void platform(int x, int y, int w, int h);
+
+        /** {@code ordinal} numbers the chunk's banknotes from 0; at most 63. */
+        void coin(int ordinal, int x, int y, int w, int h);
+
+        /** {@code ordinal} numbers the chunk's enemies from 0; at most 63. */
+        void enemy(int ordinal, int x, int y, int w, int h, int left, int right);
+    }
+
+    int chunkCount();
+
+    void generate(int chunk, Sink sink);
+}
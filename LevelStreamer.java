@@ -0,0 +1,134 @@
+package games.trial;
+
+import java.util.Random;
+
+/**
+ * Procedural level generator that works in fixed-width chunks.
+ *
+ * Chunk {@code c} covers world x in {@code [c * CHUNK_WIDTH, (c + 1) * CHUNK_WIDTH)}
+ * and is generated from its own seed, derived from the level seed and the chunk
+ * index, so chunks can be generated in any order, dropped, and generated again
+ * with identical content. Everything a chunk produces starts inside it: a
+ * ground segment, platforms with their banknotes, and patrolling enemies
+ * (whose patrol range may reach a little into the neighbours).
+ *
+ * The generator is immutable and holds no level content itself (so worlds and
+ * their snapshots can share it); it hands every object to a {@link Sink}.
+ * Coins and enemies come with their ordinal inside the chunk, at most 63 of
+ * each (a chunk fits no more than 13 platforms).
+ */
+final class LevelStreamer implements LevelSource {
+
+    static final int CHUNK_WIDTH = 2048;
+    private static final int HEIGHT = GameWorld.HEIGHT;
+    private static final int GROUND_START = -1000;
+    private static final int MAX_PLATFORM_WIDTH = 160;
+
+    // fixed enemies of the original level: x, y, w, h, left, right
+    private static final int[][] FIXED_ENEMIES = {
+            {2000, HEIGHT - 40 - 24, 28, 28, 1950, 2100},
+            {3200, HEIGHT - 40 - 24, 28, 28, 3160, 3300},
+            {4800, HEIGHT - 40 - 28, 30, 30, 4750, 4900},
+            {6400, HEIGHT - 40 - 28, 30, 30, 6360, 6500},
+    };
+
+    private final long levelSeed;
+    private final int levelEnd;
+    private final double enemyDensity;
+
+    /**
+     * @param levelEnd platforms stop 200 px before this x and the ground 1000 px
+     *                 before it, as in the original single-piece level
+     */
+    LevelStreamer(long levelSeed, int levelEnd, double enemyDensity) {
+        this.levelSeed = levelSeed;
+        this.levelEnd = levelEnd;
+        this.enemyDensity = enemyDensity;
+    }
+
+    long levelSeed() {
+        return levelSeed;
+    }
+
+    int levelEnd() {
+        return levelEnd;
+    }
+
+    double enemyDensity() {
+        return enemyDensity;
+    }
+
+    @Override
+    public int chunkCount() {
+        return Math.floorDiv(levelEnd - 200 - 1, CHUNK_WIDTH) + 1;
+    }
+
+    /** Chunk that owns an object starting at {@code x} (the ground left of 0 belongs to chunk 0). */
+    static int chunkOf(int x) {
+        return Math.max(0, Math.floorDiv(x, CHUNK_WIDTH));
+    }
+
+    private long chunkSeed(int chunk) {
+        // SplitMix64 finalizer over (level seed, chunk), so neighbouring chunks get unrelated sequences
+        long z = levelSeed + (chunk + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /** Generates chunk {@code chunk} into {@code sink}; the same chunk always yields the same calls. */
+    @Override
+    public void generate(int chunk, Sink sink) {
+        int start = chunk * CHUNK_WIDTH;
+        int end = start + CHUNK_WIDTH;
+        Random r = new Random(chunkSeed(chunk));
+
+        int groundStart = chunk == 0 ? GROUND_START : start;
+        int groundEnd = Math.min(end, levelEnd - 1000);
+        if (groundEnd > groundStart) {
+            sink.platform(groundStart, HEIGHT - 40, groundEnd - groundStart, 40);
+        }
+
+        // Procedurally generate platforms across the chunk with occasional gaps
+        int coinOrdinal = 0;
+        int enemyOrdinal = 0;
+        int x = chunk == 0 ? 200 : start + r.nextInt(80);
+        while (x < levelEnd - 200 && x + MAX_PLATFORM_WIDTH <= end) {
+            int pw = 80 + r.nextInt(80); // platform width
+            int phY = HEIGHT - (40 + 60 + r.nextInt(160)); // vary platform height
+            sink.platform(x, phY, pw, 16);
+
+            // Place 1-3 banknotes above the platform
+            int notes = 1 + r.nextInt(3);
+            for (int i = 0; i < notes; i++) {
+                int bw = 30;
+                int bh = 14;
+                int cx = x + 6 + i * (bw + 6);
+                if (cx + bw < x + pw - 6) {
+                    sink.coin(coinOrdinal++, cx, phY - bh - 6, bw, bh);
+                }
+            }
+
+            // Occasionally add an enemy patrolling near this platform
+            if (r.nextDouble() < enemyDensity) {
+                int ex = x + pw/2;
+                int ey = HEIGHT - 40 - 24; // ground enemy
+                int ew = 24;
+                int eh = 24;
+                int left = Math.max(0, ex - 80);
+                int right = ex + 80;
+                sink.enemy(enemyOrdinal++, ex, ey, ew, eh, left, right);
+            }
+
+            // advance x with random gap
+            x += pw + 80 + r.nextInt(120);
+        }
+
+        // Add the fixed enemies that fall in this chunk as well
+        for (int[] e : FIXED_ENEMIES) {
+            if (e[0] >= start && e[0] < end && e[0] < levelEnd) {
+                sink.enemy(enemyOrdinal++, e[0], e[1], e[2], e[3], e[4], e[5]);
+            }
+        }
+    }
+}
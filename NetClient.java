@@ -0,0 +1,187 @@
+package games.trial;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Client end of a {@link NetServer} connection: rebuilds the player's view
+ * from the snapshot deltas and sends back button changes and acknowledgements.
+ *
+ * The channel is non-blocking and the client has no thread of its own; the
+ * owner calls {@link #receive} when the channel is readable and
+ * {@link #flush} once per frame, so many clients can share one selector.
+ * Button changes given to {@link #input} between flushes go out together in
+ * one message, along with the acknowledgement of the newest snapshot.
+ *
+ * Decoded snapshots are kept for as many ticks as the server keeps them, so
+ * whichever acknowledged snapshot the server picks as a delta's base is
+ * still here.
+ */
+final class NetClient {
+    private static final int HISTORY = 32; // as the server's
+    private static final int BUFFER_BYTES = NetProtocol.MAX_FRAME + 8;
+
+    private final SocketChannel channel;
+    private final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+    private final ByteBuffer payload = ByteBuffer.allocate(NetProtocol.MAX_FRAME);
+    private final NetSnapshot[] history = new NetSnapshot[HISTORY];
+    private final NetSnapshot empty = new NetSnapshot();
+    private final IntList inputs = new IntList(); // button changes not sent yet
+    private NetSnapshot latest = empty;
+    private int lastButtons = -1;
+    private int ackSent;
+
+    // from the welcome message
+    private int slot;
+    private long seed;
+    private int levelLength;
+    private int tickRate;
+
+    private long bytesIn, bytesOut;
+    private long snapshots, fullSnapshots;
+
+    /** Connects (blocking) and switches the channel to non-blocking mode. */
+    NetClient(InetSocketAddress server) throws IOException {
+        channel = SocketChannel.open(server);
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        for (int i = 0; i < HISTORY; i++) history[i] = new NetSnapshot();
+        out.flip(); // kept in read mode between writes
+    }
+
+    SocketChannel channel() {
+        return channel;
+    }
+
+    /** True once the welcome message has arrived. */
+    boolean isWelcomed() {
+        return slot != 0;
+    }
+
+    int slot() {
+        return slot;
+    }
+
+    long seed() {
+        return seed;
+    }
+
+    int levelLength() {
+        return levelLength;
+    }
+
+    int tickRate() {
+        return tickRate;
+    }
+
+    /** The newest decoded state (the empty one, tick 0, before the first snapshot). */
+    NetSnapshot latest() {
+        return latest;
+    }
+
+    /**
+     * Reads what the channel has and decodes every complete message. Returns
+     * the number of snapshots decoded.
+     *
+     * @throws IOException if the server closed the connection or sent something malformed
+     */
+    int receive() throws IOException {
+        int n = channel.read(in);
+        if (n < 0) throw new IOException("connection closed by the server");
+        bytesIn += n;
+        int decoded = 0;
+        in.flip();
+        try {
+            for (int len; (len = NetProtocol.frameLength(in)) >= 0; ) {
+                if (len > NetProtocol.MAX_FRAME) throw new IOException("frame too large");
+                int start = in.position() + NetProtocol.varintSize(len);
+                if (start + len > in.limit()) break;
+                int end = start + len;
+                int limit = in.limit();
+                in.position(start).limit(end);
+                byte type = in.get();
+                if (type == NetProtocol.WELCOME) {
+                    slot = NetProtocol.getVarint(in);
+                    seed = in.getLong();
+                    levelLength = NetProtocol.getVarint(in);
+                    tickRate = NetProtocol.getVarint(in);
+                } else if (type == NetProtocol.SNAPSHOT) {
+                    decodeSnapshot();
+                    decoded++;
+                } else {
+                    throw new IOException("unexpected message " + type);
+                }
+                if (in.position() != end) throw new IOException("malformed message " + type);
+                in.limit(limit);
+            }
+        } catch (RuntimeException e) {
+            throw new IOException("malformed message", e);
+        }
+        in.compact();
+        return decoded;
+    }
+
+    private void decodeSnapshot() throws IOException {
+        int tick = NetProtocol.getVarint(in);
+        int baseTick = NetProtocol.getVarint(in);
+        NetSnapshot base = baseTick == 0 ? empty : history[baseTick % HISTORY];
+        if (base.tick != baseTick || tick <= latest.tick || tick - baseTick >= HISTORY) {
+            throw new IOException("snapshot " + tick + " against unknown base " + baseTick);
+        }
+        if (baseTick == 0) fullSnapshots++;
+        NetSnapshot s = history[tick % HISTORY];
+        s.decode(in, base);
+        s.tick = tick;
+        latest = s;
+        snapshots++;
+    }
+
+    /** Buttons held now; only changes are sent. */
+    void input(int bits) {
+        if (bits != lastButtons) {
+            inputs.add(bits);
+            lastButtons = bits;
+        }
+    }
+
+    /** Sends the pending button changes and acknowledgement, if any, and writes what the socket takes. */
+    void flush() throws IOException {
+        if (!out.hasRemaining() && (!inputs.isEmpty() || ackSent != latest.tick)) {
+            payload.clear();
+            payload.put(NetProtocol.INPUT);
+            NetProtocol.putVarint(payload, latest.tick);
+            NetProtocol.putVarint(payload, inputs.size());
+            for (int i = 0; i < inputs.size(); i++) payload.put((byte) inputs.get(i));
+            payload.flip();
+            out.clear();
+            NetProtocol.putFrame(out, payload);
+            out.flip();
+            inputs.clear();
+            ackSent = latest.tick;
+        }
+        if (out.hasRemaining()) bytesOut += channel.write(out);
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    long bytesIn() {
+        return bytesIn;
+    }
+
+    long bytesOut() {
+        return bytesOut;
+    }
+
+    long snapshots() {
+        return snapshots;
+    }
+
+    long fullSnapshots() {
+        return fullSnapshots;
+    }
+}
@@ -0,0 +1,114 @@
+package games.trial;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+
+/**
+ * Load test for {@link NetServer}: runs a server on a loopback port and
+ * races simulated clients against it, then reports bandwidth and tick
+ * latency for each client count.
+ *
+ * Every client plays the {@link HeadlessRunner} bot, so it sends a button
+ * change a few times a second and acknowledges each snapshot; all of them
+ * run on one thread and one selector, next to the server's thread.
+ *
+ * Reported per client count: the server's time to step, encode and write a
+ * tick (p50/p99/max), the age of each client's newest state when it is
+ * decoded (from the tick's scheduled start, p50/p99), bytes per second per
+ * client each way, and the mean snapshot size next to the mean size the same
+ * states would take as full snapshots.
+ *
+ * Run with: java -cp <classes> games.trial.NetLoadTest [seconds] [client counts...]
+ */
+public class NetLoadTest {
+
+    /** Runs {@code clients} bots for {@code seconds} and prints one line of results. */
+    static void run(int clients, double seconds, boolean print) throws IOException, InterruptedException {
+        NetServer server = new NetServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0),
+                1, GameWorld.DEFAULT_LEVEL_LENGTH, NetServer.DEFAULT_TICK_RATE);
+        Thread serverThread = new Thread(server, "net-server");
+        serverThread.start();
+
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.port());
+        NetClient[] bots = new NetClient[clients];
+        Selector selector = Selector.open();
+        for (int i = 0; i < clients; i++) {
+            bots[i] = new NetClient(address);
+            bots[i].channel().register(selector, SelectionKey.OP_READ, bots[i]);
+        }
+
+        Histogram latency = new Histogram();
+        ByteBuffer scratch = ByteBuffer.allocate(NetProtocol.MAX_FRAME);
+        NetSnapshot empty = new NetSnapshot();
+        long fullBytes = 0;
+        long sized = 0;
+        long t0 = System.nanoTime();
+        long deadline = t0 + (long) (seconds * 1e9);
+        while (System.nanoTime() < deadline) {
+            selector.select(1);
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                NetClient c = (NetClient) key.attachment();
+                if (c.receive() > 0) {
+                    NetSnapshot s = c.latest();
+                    long started = server.tickStarted(s.tick);
+                    if (started != 0) latency.record(System.nanoTime() - started);
+                    scratch.clear();
+                    s.encode(scratch, empty);
+                    fullBytes += scratch.position() + 2; // plus the tick numbers
+                    sized++;
+                }
+            }
+            for (NetClient c : bots) {
+                c.input(HeadlessRunner.botInput(c.latest().tick));
+                c.flush();
+            }
+        }
+        double elapsed = (System.nanoTime() - t0) / 1e9;
+        server.stop();
+        serverThread.join();
+        for (NetClient c : bots) c.close();
+        selector.close();
+        if (!print) return;
+
+        long snapshots = 0, full = 0, down = 0, up = 0;
+        for (NetClient c : bots) {
+            snapshots += c.snapshots();
+            full += c.fullSnapshots();
+            down += c.bytesIn();
+            up += c.bytesOut();
+        }
+        Histogram tickTime = server.tickTime();
+        System.out.printf("%7d %7d %8.0f %8.0f %8.0f %7.1f %7.1f %10.0f %8.0f %9.1f %9.1f %6d %7d%n",
+                clients, server.ticks(),
+                tickTime.percentile(50) / 1e3, tickTime.percentile(99) / 1e3, tickTime.max() / 1e3,
+                latency.percentile(50) / 1e6, latency.percentile(99) / 1e6,
+                down / elapsed / clients, up / elapsed / clients,
+                snapshots == 0 ? 0 : down / (double) snapshots, sized == 0 ? 0 : fullBytes / (double) sized,
+                full, server.snapshotsSkipped());
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        double seconds = args.length > 0 ? Double.parseDouble(args[0]) : 5.0;
+        int[] counts = {2, 16, 64};
+        if (args.length > 1) {
+            counts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) counts[i - 1] = Integer.parseInt(args[i]);
+        }
+
+        run(4, 2, false); // warm-up
+        System.out.printf("%d ticks/s, %.1f s per run; times in us (tick) and ms (latency), bandwidth in bytes%n",
+                NetServer.DEFAULT_TICK_RATE, seconds);
+        System.out.printf("%7s %7s %8s %8s %8s %7s %7s %10s %8s %9s %9s %6s %7s%n",
+                "clients", "ticks", "tick p50", "tick p99", "tick max", "lat p50", "lat p99",
+                "down B/s", "up B/s", "B/snap", "B/full", "fulls", "skipped");
+        for (int clients : counts) run(clients, seconds, true);
+    }
+}
@@ -0,0 +1,100 @@
+package games.trial;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Wire format shared by {@link NetServer} and {@link NetClient}.
+ *
+ * A TCP stream carries frames: the payload length as a varint, then the
+ * payload, whose first byte is the message type.
+ *
+ * <ul>
+ * <li>{@link #WELCOME} (server to client, once): the client's player slot
+ * (varint), the seed (long), level length and tick rate (varints).</li>
+ * <li>{@link #SNAPSHOT} (server to client, at most once per tick): a
+ * {@link NetSnapshot} delta, see {@link NetSnapshot#encode}.</li>
+ * <li>{@link #INPUT} (client to server): the newest snapshot tick the client
+ * has decoded (varint), then a count (varint) and that many button masks
+ * (one byte each), to be applied on consecutive ticks.</li>
+ * </ul>
+ *
+ * All integers other than the seed are varints; signed ones are zigzag coded
+ * first, so small values of either sign take a byte.
+ */
+final class NetProtocol {
+    static final byte WELCOME = 1;
+    static final byte SNAPSHOT = 2;
+    static final byte INPUT = 3;
+
+    static final int MAX_FRAME = 1 << 16; // payload bytes; larger frames are a protocol error
+
+    private NetProtocol() {
+    }
+
+    static void putVarint(ByteBuffer out, int v) {
+        while ((v & ~0x7F) != 0) {
+            out.put((byte) (v & 0x7F | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    /** Reads a varint; the caller must know the buffer holds a complete one. */
+    static int getVarint(ByteBuffer in) {
+        int v = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            int b = in.get();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    static void putSigned(ByteBuffer out, int v) {
+        putVarint(out, v << 1 ^ v >> 31);
+    }
+
+    static int getSigned(ByteBuffer in) {
+        int v = getVarint(in);
+        return v >>> 1 ^ -(v & 1);
+    }
+
+    /**
+     * Length of the frame starting at {@code in}'s position, or -1 if the
+     * buffer doesn't hold the whole length prefix yet. Doesn't move the
+     * position.
+     */
+    static int frameLength(ByteBuffer in) {
+        int v = 0;
+        for (int i = 0, shift = 0; i < 5; i++, shift += 7) {
+            if (in.position() + i >= in.limit()) return -1;
+            int b = in.get(in.position() + i);
+            if (i == 4 && (b & 0xF8) != 0) break; // past 31 bits: not a length
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IllegalArgumentException("malformed frame length");
+    }
+
+    /** Bytes taken by the varint encoding of {@code v}. */
+    static int varintSize(int v) {
+        int n = 1;
+        while ((v & ~0x7F) != 0) {
+            v >>>= 7;
+            n++;
+        }
+        return n;
+    }
+
+    /**
+     * Copies {@code payload} (position to limit) into {@code out} as one frame.
+     * Returns false, writing nothing, if {@code out} hasn't room for it.
+     */
+    static boolean putFrame(ByteBuffer out, ByteBuffer payload) {
+        int len = payload.remaining();
+        if (out.remaining() < varintSize(len) + len) return false;
+        putVarint(out, len);
+        out.put(payload);
+        return true;
+    }
+}
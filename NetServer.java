@@ -0,0 +1,383 @@
+package games.trial;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Authoritative race server: every connected player races the first level of
+ * the same seed toward the flag, and the server steps all of them at a fixed
+ * tick rate and streams each one what it sees.
+ *
+ * Each player has a {@link GameWorld} of its own built from the shared seed,
+ * so all of them play the same level; players don't collide and banknotes
+ * taken by one are still there for the others, as with racing against ghosts.
+ * Every player receives the positions of all racers in its snapshots. A player
+ * whose run is over starts the level again on a fresh jump press.
+ *
+ * One thread runs everything on a NIO {@link Selector}: between ticks it
+ * accepts connections and reads input, and on each tick it steps every world
+ * and writes the snapshots. Inputs arriving in between are queued per player
+ * and applied one per tick, so a press and a release that arrive together
+ * are both seen by the world. Each snapshot is a delta against the newest
+ * one the client has acknowledged, kept in a per-player history; if the
+ * client hasn't acknowledged any still in the history, it gets a full one. A
+ * client whose previous snapshot hasn't been flushed yet is skipped for the
+ * tick rather than queued up; its next delta covers the gap.
+ *
+ * Run with: java -cp <classes> games.trial.NetServer [port] [seed] [tick rate] [--host address]
+ */
+final class NetServer implements Runnable {
+    static final int DEFAULT_PORT = 7777;
+    static final int DEFAULT_TICK_RATE = 60;
+    private static final int HISTORY = 32;         // snapshots kept per player, for acknowledged baselines
+    private static final int MAX_PENDING_INPUTS = 64;
+    private static final int BUFFER_BYTES = NetProtocol.MAX_FRAME + 8;
+    private static final int TICK_TIMES = 1024;    // tick start times kept for latency measurements
+
+    private final long seed;
+    private final int levelLength;
+    private final int tickRate;
+    private final long tickNanos;
+    private final Selector selector;
+    private final ServerSocketChannel listener;
+    private final ArrayList<Player> players = new ArrayList<>();
+    private final LevelProvider levels = new LevelProvider(); // every player plays the same level: built once
+    private final NetSnapshot.Table racers = new NetSnapshot.Table();
+    private final NetSnapshot empty = new NetSnapshot();
+    private final IntList ids = new IntList();
+    private final InputState input = new InputState();
+    private final ByteBuffer payload = ByteBuffer.allocate(NetProtocol.MAX_FRAME);
+    private final AtomicLongArray tickStarted = new AtomicLongArray(TICK_TIMES);
+    private int nextSlot;
+    private volatile boolean stopping;
+
+    // statistics, read once the server thread has stopped
+    private final Histogram tickTime = new Histogram(); // stepping, encoding and writing a tick
+    private int tick;
+    private long bytesIn, bytesOut;
+    private long snapshotsSent, fullSnapshots, snapshotsSkipped;
+
+    /** A connected player: its world, queued input and snapshot history. */
+    private final class Player {
+        final int slot;
+        final SocketChannel channel;
+        final SelectionKey key;
+        final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+        final ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+        final NetSnapshot[] history = new NetSnapshot[HISTORY];
+        final IntList pending = new IntList(); // button masks, oldest first from pendingHead
+        int pendingHead;
+        int buttons;
+        int acked; // newest tick the client has decoded; 0 for none
+        GameWorld world;
+
+        Player(int slot, SocketChannel channel, SelectionKey key) {
+            this.slot = slot;
+            this.channel = channel;
+            this.key = key;
+            for (int i = 0; i < HISTORY; i++) history[i] = new NetSnapshot();
+            world = new GameWorld(seed, levelLength, levels);
+            out.flip(); // kept in read mode between writes
+        }
+    }
+
+    /** Binds to {@code address} (port 0 for any free one); call {@link #run} to serve. */
+    NetServer(InetSocketAddress address, long seed, int levelLength, int tickRate) throws IOException {
+        this.seed = seed;
+        this.levelLength = levelLength;
+        this.tickRate = tickRate;
+        this.tickNanos = 1_000_000_000L / tickRate;
+        selector = Selector.open();
+        listener = ServerSocketChannel.open();
+        listener.bind(address);
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    int port() {
+        return listener.socket().getLocalPort();
+    }
+
+    /** Makes {@link #run} return after the current tick; callable from any thread. */
+    void stop() {
+        stopping = true;
+        selector.wakeup();
+    }
+
+    /** The server's level cache, whose hit rate shows how often a player's world started on a ready level. */
+    LevelProvider levels() {
+        return levels;
+    }
+
+    /** When tick {@code t} started, by {@link System#nanoTime}, if it was among the last ones; else 0. */
+    long tickStarted(int t) {
+        return t > 0 && t > tick - TICK_TIMES ? tickStarted.get(t % TICK_TIMES) : 0;
+    }
+
+    /** Serves until {@link #stop}, then closes every connection. */
+    @Override
+    public void run() {
+        try {
+            long next = System.nanoTime() + tickNanos;
+            while (!stopping) {
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    selector.select(Math.max(1, wait / 1_000_000));
+                } else {
+                    selector.selectNow();
+                }
+                handleKeys();
+                long start = System.nanoTime();
+                if (start - next >= 0) {
+                    tick(next);
+                    tickTime.record(System.nanoTime() - start);
+                    next += tickNanos;
+                    if (System.nanoTime() - next > tickNanos * 4) next = System.nanoTime(); // too far behind: don't catch up in a burst
+                }
+            }
+        } catch (IOException e) {
+            throw new java.io.UncheckedIOException(e);
+        } finally {
+            for (Player p : players) closeQuietly(p.channel);
+            closeQuietly(listener);
+            levels.close();
+            try {
+                selector.close();
+            } catch (IOException ignored) {
+                // nothing left to do
+            }
+        }
+    }
+
+    private void handleKeys() throws IOException {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (!key.isValid()) continue;
+            if (key.isAcceptable()) {
+                accept();
+                continue;
+            }
+            Player p = (Player) key.attachment();
+            try {
+                if (key.isReadable()) read(p);
+                if (key.isValid() && key.isWritable()) flush(p);
+            } catch (IOException e) {
+                drop(p); // reset by the peer, or a malformed message; anything else is a server bug and propagates
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel ch = listener.accept();
+        if (ch == null) return;
+        ch.configureBlocking(false);
+        ch.socket().setTcpNoDelay(true);
+        Player p = new Player(++nextSlot, ch, ch.register(selector, SelectionKey.OP_READ));
+        p.key.attach(p);
+        players.add(p);
+
+        payload.clear();
+        payload.put(NetProtocol.WELCOME);
+        NetProtocol.putVarint(payload, p.slot);
+        payload.putLong(seed);
+        NetProtocol.putVarint(payload, levelLength);
+        NetProtocol.putVarint(payload, tickRate);
+        try {
+            send(p);
+        } catch (IOException e) {
+            drop(p);
+        }
+    }
+
+    private void read(Player p) throws IOException {
+        int n = p.channel.read(p.in);
+        if (n < 0) {
+            drop(p);
+            return;
+        }
+        bytesIn += n;
+        p.in.flip();
+        try {
+            readFrames(p);
+        } catch (IllegalArgumentException | BufferUnderflowException e) {
+            // what the decoder throws on a malformed varint or a message shorter than it claims
+            throw new IOException("malformed message", e);
+        }
+        p.in.compact();
+    }
+
+    /** Applies every complete frame in {@code p.in}, leaving a partial one in place. */
+    private void readFrames(Player p) throws IOException {
+        for (int len; (len = NetProtocol.frameLength(p.in)) != -1; ) {
+            if (len < 0 || len > NetProtocol.MAX_FRAME) throw new IOException("bad frame length " + len);
+            int start = p.in.position() + NetProtocol.varintSize(len);
+            if (start + len > p.in.limit()) break;
+            p.in.position(start);
+            ByteBuffer frame = p.in.slice();
+            frame.limit(len);
+            p.in.position(start + len);
+            if (frame.get() != NetProtocol.INPUT) throw new IOException("unexpected message");
+            int ack = NetProtocol.getVarint(frame);
+            if (ack > p.acked && ack <= tick) p.acked = ack;
+            for (int count = NetProtocol.getVarint(frame); count > 0; count--) {
+                int bits = frame.get() & (InputState.LEFT | InputState.RIGHT | InputState.JUMP);
+                if (p.pending.size() - p.pendingHead < MAX_PENDING_INPUTS) p.pending.add(bits);
+            }
+        }
+    }
+
+    private void tick(long scheduled) {
+        tick++;
+        tickStarted.set(tick % TICK_TIMES, scheduled);
+        // batch all input received since the last tick: at most one change per player per step
+        for (int i = 0; i < players.size(); i++) {
+            Player p = players.get(i);
+            if (p.pendingHead < p.pending.size()) {
+                int bits = p.pending.get(p.pendingHead++);
+                if (p.pendingHead == p.pending.size()) {
+                    p.pending.clear();
+                    p.pendingHead = 0;
+                }
+                boolean pressed = (bits & ~p.buttons & InputState.JUMP) != 0;
+                p.buttons = bits;
+                if (!p.world.isRunning() && pressed) {
+                    p.world = new GameWorld(seed, levelLength, levels); // same level again
+                }
+            }
+            input.setBits(p.buttons);
+            p.world.step(input);
+        }
+
+        racers.clear();
+        for (int i = 0; i < players.size(); i++) {
+            Player p = players.get(i);
+            Box b = p.world.player();
+            racers.add(p.slot, b.x, b.y, NetSnapshot.centimeters(p.world), NetSnapshot.state(p.world));
+        }
+
+        for (int i = players.size() - 1; i >= 0; i--) {
+            Player p = players.get(i);
+            NetSnapshot s = p.history[tick % HISTORY];
+            s.capture(tick, p.world, racers, ids);
+            if (p.out.hasRemaining()) {
+                snapshotsSkipped++; // still sending an older one
+                continue;
+            }
+            NetSnapshot base = p.history[p.acked % HISTORY];
+            if (p.acked == 0 || base.tick != p.acked || tick - p.acked >= HISTORY) {
+                base = empty;
+                fullSnapshots++;
+            }
+            if (s.maxEncodedSize(base) + 16 > NetProtocol.MAX_FRAME) {
+                drop(p); // can't happen with a view-sized state
+                continue;
+            }
+            payload.clear();
+            payload.put(NetProtocol.SNAPSHOT);
+            NetProtocol.putVarint(payload, tick);
+            NetProtocol.putVarint(payload, base.tick);
+            s.encode(payload, base);
+            try {
+                send(p);
+                snapshotsSent++;
+            } catch (IOException e) {
+                drop(p);
+            }
+        }
+    }
+
+    /** Frames {@code payload} into the player's output and writes what the socket takes. */
+    private void send(Player p) throws IOException {
+        payload.flip();
+        p.out.compact();
+        boolean fits = NetProtocol.putFrame(p.out, payload);
+        p.out.flip();
+        if (!fits) throw new IOException("output buffer full");
+        flush(p);
+    }
+
+    private void flush(Player p) throws IOException {
+        bytesOut += p.channel.write(p.out);
+        int ops = p.out.hasRemaining() ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        if (p.key.interestOps() != ops) p.key.interestOps(ops);
+    }
+
+    private void drop(Player p) {
+        if (players.remove(p)) {
+            p.key.cancel();
+            closeQuietly(p.channel);
+        }
+    }
+
+    private static void closeQuietly(java.io.Closeable c) {
+        try {
+            c.close();
+        } catch (IOException ignored) {
+            // already gone
+        }
+    }
+
+    // --- statistics, valid once run() has returned ---
+
+    int ticks() {
+        return tick;
+    }
+
+    Histogram tickTime() {
+        return tickTime;
+    }
+
+    long bytesIn() {
+        return bytesIn;
+    }
+
+    long bytesOut() {
+        return bytesOut;
+    }
+
+    long snapshotsSent() {
+        return snapshotsSent;
+    }
+
+    long fullSnapshots() {
+        return fullSnapshots;
+    }
+
+    long snapshotsSkipped() {
+        return snapshotsSkipped;
+    }
+
+    public static void main(String[] args) throws IOException {
+        ArrayList<String> positional = new ArrayList<>();
+        String host = null;
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--host") && i + 1 < args.length) {
+                host = args[++i];
+            } else {
+                positional.add(args[i]);
+            }
+        }
+        int port = positional.size() > 0 ? Integer.parseInt(positional.get(0)) : DEFAULT_PORT;
+        long seed = positional.size() > 1 ? Long.parseLong(positional.get(1)) : 1;
+        int tickRate = positional.size() > 2 ? Integer.parseInt(positional.get(2)) : DEFAULT_TICK_RATE;
+        InetSocketAddress address = host == null
+                ? new InetSocketAddress(InetAddress.getLoopbackAddress(), port)
+                : new InetSocketAddress(host, port);
+
+        NetServer server = new NetServer(address, seed, GameWorld.DEFAULT_LEVEL_LENGTH, tickRate);
+        System.out.printf("racing seed %d on %s:%d at %d ticks/s%n", seed, address.getHostString(), server.port(), tickRate);
+        server.run();
+    }
+}
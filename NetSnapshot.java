@@ -0,0 +1,388 @@
+package games.trial;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * What one client sees of the race at one tick: its own player and camera,
+ * every racer's position, and the enemies and banknotes in its view.
+ *
+ * Entities are keyed by their world tag (chunk and ordinal in the chunk),
+ * which stays the same however the resident set is streamed and reshuffled,
+ * and the tables are kept sorted by key. That lets {@link #encode} write a
+ * snapshot as a delta against an older one with a single merge walk: the
+ * keys that went away, the fields that changed (as small signed differences)
+ * and the rows that are new. A tick where only the patrolling enemies and the
+ * player moved costs a few bytes per moving object; banknotes, which never
+ * move, cost nothing until they are picked up or scroll out of view.
+ *
+ * Only the view (plus {@link #VIEW_SLACK}) is sent, not the whole resident
+ * level, so what a client receives doesn't grow with the level or the chunk
+ * size. Enemies there are always inside the world's active region, so their
+ * positions are current.
+ */
+final class NetSnapshot {
+    // Header fields
+    static final int CAM_X = 0;
+    static final int PLAYER_X = 1;
+    static final int PLAYER_Y = 2;
+    static final int SCORE = 3;
+    static final int LIVES = 4;
+    static final int CENTIMETERS = 5; // distance travelled
+    static final int FLAG_X = 6;      // -1 until the flag is placed
+    static final int STATE = 7;       // RUNNING | COMPLETED
+    static final int HEADER = 8;
+
+    static final int RUNNING = 1;
+    static final int COMPLETED = 2;
+
+    static final int VIEW_SLACK = 64; // px past the view edges whose entities are still sent
+
+    /** Tick of the world this is the state of; 0 for the empty state deltas start from. */
+    int tick;
+    final int[] header = new int[HEADER];
+    /** Keyed by player slot: x, y, centimeters, state. */
+    final Table racers = new Table();
+    /** Keyed by world tag: x, y, width, height. */
+    final Table enemies = new Table();
+    /** Keyed by world tag: x, y, width, height. */
+    final Table coins = new Table();
+
+    // decoding scratch
+    private final IntList removedKeys = new IntList();
+    private final Table changedRows = new Table();
+    private final Table addedRows = new Table();
+
+    /** Rows of four ints under distinct keys, in increasing key order. */
+    static final class Table {
+        static final int COLUMNS = 4;
+
+        private final IntList keys = new IntList();
+        private final IntList values = new IntList(16 * COLUMNS);
+
+        int size() {
+            return keys.size();
+        }
+
+        int key(int row) {
+            return keys.get(row);
+        }
+
+        int get(int row, int column) {
+            return values.get(row * COLUMNS + column);
+        }
+
+        void clear() {
+            keys.clear();
+            values.clear();
+        }
+
+        /** Appends a row; {@code key} must be greater than every key already in the table. */
+        void add(int key, int a, int b, int c, int d) {
+            keys.add(key);
+            values.add(a);
+            values.add(b);
+            values.add(c);
+            values.add(d);
+        }
+
+        /** Adds a row wherever its key belongs; for building small tables from unordered input. */
+        void insert(int key, int a, int b, int c, int d) {
+            add(key, a, b, c, d);
+            int row = size() - 1;
+            while (row > 0 && keys.get(row - 1) > key) {
+                swapRows(row - 1, row);
+                row--;
+            }
+        }
+
+        private void swapRows(int r, int s) {
+            int k = keys.get(r);
+            keys.set(r, keys.get(s));
+            keys.set(s, k);
+            for (int c = 0; c < COLUMNS; c++) {
+                int v = values.get(r * COLUMNS + c);
+                values.set(r * COLUMNS + c, values.get(s * COLUMNS + c));
+                values.set(s * COLUMNS + c, v);
+            }
+        }
+
+        void copyFrom(Table src) {
+            clear();
+            for (int r = 0; r < src.size(); r++) {
+                add(src.key(r), src.get(r, 0), src.get(r, 1), src.get(r, 2), src.get(r, 3));
+            }
+        }
+
+        boolean sameAs(Table o) {
+            if (size() != o.size()) return false;
+            for (int r = 0; r < size(); r++) {
+                if (key(r) != o.key(r)) return false;
+                for (int c = 0; c < COLUMNS; c++) {
+                    if (get(r, c) != o.get(r, c)) return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /** Fills this with what the player of {@code world} sees at {@code tick}, racers included. */
+    void capture(int tick, GameWorld world, Table allRacers, IntList ids) {
+        this.tick = tick;
+        Box p = world.player();
+        int camX = world.camX();
+        header[CAM_X] = camX;
+        header[PLAYER_X] = p.x;
+        header[PLAYER_Y] = p.y;
+        header[SCORE] = world.score();
+        header[LIVES] = world.lives();
+        header[CENTIMETERS] = centimeters(world);
+        header[FLAG_X] = world.flagPixelX();
+        header[STATE] = state(world);
+        racers.copyFrom(allRacers);
+
+        int minX = camX - VIEW_SLACK;
+        int maxX = camX + GameWorld.WIDTH + VIEW_SLACK;
+        EntityStore e = world.enemies();
+        enemies.clear();
+        world.queryEnemies(minX, maxX, ids);
+        for (int n = 0; n < ids.size(); n++) {
+            int id = ids.get(n);
+            if (e.isAlive(id) && e.x[id] + e.w[id] > minX && e.x[id] < maxX) {
+                enemies.insert(e.tag[id], e.x[id], e.y[id], e.w[id], e.h[id]);
+            }
+        }
+        EntityStore c = world.coins();
+        coins.clear();
+        world.queryCoins(minX, maxX, ids);
+        for (int n = 0; n < ids.size(); n++) {
+            int id = ids.get(n);
+            if (c.isAlive(id) && c.x[id] + c.w[id] > minX && c.x[id] < maxX) {
+                coins.insert(c.tag[id], c.x[id], c.y[id], c.w[id], c.h[id]);
+            }
+        }
+    }
+
+    static int centimeters(GameWorld world) {
+        return (int) Math.round(world.metersTraveled() * 100);
+    }
+
+    static int state(GameWorld world) {
+        return (world.isRunning() ? RUNNING : 0) | (world.isCompleted() ? COMPLETED : 0);
+    }
+
+    /** Makes this the empty state, tick 0. */
+    void clear() {
+        tick = 0;
+        Arrays.fill(header, 0);
+        racers.clear();
+        enemies.clear();
+        coins.clear();
+    }
+
+    void copyFrom(NetSnapshot src) {
+        tick = src.tick;
+        System.arraycopy(src.header, 0, header, 0, HEADER);
+        racers.copyFrom(src.racers);
+        enemies.copyFrom(src.enemies);
+        coins.copyFrom(src.coins);
+    }
+
+    /** Same state (the tick is not compared). */
+    boolean sameState(NetSnapshot o) {
+        return Arrays.equals(header, o.header) && racers.sameAs(o.racers)
+                && enemies.sameAs(o.enemies) && coins.sameAs(o.coins);
+    }
+
+    /** Upper bound of the bytes {@link #encode} writes for this state against {@code base}. */
+    int maxEncodedSize(NetSnapshot base) {
+        return 5 + HEADER * 5 + maxEncodedSize(racers, base.racers)
+                + maxEncodedSize(enemies, base.enemies) + maxEncodedSize(coins, base.coins);
+    }
+
+    private static int maxEncodedSize(Table cur, Table base) {
+        return 3 * 5 + base.size() * 5 + cur.size() * (5 + 1 + Table.COLUMNS * 5);
+    }
+
+    /**
+     * Writes this state as a delta against {@code base} (the empty state for a
+     * full snapshot). The ticks are not written; the receiver has to know
+     * which state it applies the delta to.
+     */
+    void encode(ByteBuffer out, NetSnapshot base) {
+        int mask = 0;
+        for (int f = 0; f < HEADER; f++) {
+            if (header[f] != base.header[f]) mask |= 1 << f;
+        }
+        NetProtocol.putVarint(out, mask);
+        for (int f = 0; f < HEADER; f++) {
+            if ((mask & 1 << f) != 0) NetProtocol.putSigned(out, header[f] - base.header[f]);
+        }
+        encode(out, racers, base.racers);
+        encode(out, enemies, base.enemies);
+        encode(out, coins, base.coins);
+    }
+
+    /**
+     * One table: the removed keys, then the changed rows (key, column mask,
+     * differences), then the added rows (key, values). Keys in each list are
+     * increasing and written as the difference from the previous one.
+     */
+    private static void encode(ByteBuffer out, Table cur, Table base) {
+        int removed = 0, changed = 0, added = 0;
+        for (int i = 0, j = 0; i < cur.size() || j < base.size(); ) {
+            int order = compareAt(cur, i, base, j);
+            if (order < 0) {
+                added++;
+                i++;
+            } else if (order > 0) {
+                removed++;
+                j++;
+            } else {
+                if (columnMask(cur, i, base, j) != 0) changed++;
+                i++;
+                j++;
+            }
+        }
+
+        NetProtocol.putVarint(out, removed);
+        int prev = 0;
+        for (int i = 0, j = 0; removed > 0; ) {
+            int order = compareAt(cur, i, base, j);
+            if (order > 0) {
+                NetProtocol.putSigned(out, base.key(j) - prev);
+                prev = base.key(j);
+                removed--;
+                j++;
+            } else {
+                if (order == 0) j++;
+                i++;
+            }
+        }
+
+        NetProtocol.putVarint(out, changed);
+        prev = 0;
+        for (int i = 0, j = 0; changed > 0; ) {
+            int order = compareAt(cur, i, base, j);
+            if (order == 0) {
+                int mask = columnMask(cur, i, base, j);
+                if (mask != 0) {
+                    NetProtocol.putSigned(out, cur.key(i) - prev);
+                    prev = cur.key(i);
+                    out.put((byte) mask);
+                    for (int c = 0; c < Table.COLUMNS; c++) {
+                        if ((mask & 1 << c) != 0) NetProtocol.putSigned(out, cur.get(i, c) - base.get(j, c));
+                    }
+                    changed--;
+                }
+                i++;
+                j++;
+            } else if (order < 0) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+
+        NetProtocol.putVarint(out, added);
+        prev = 0;
+        for (int i = 0, j = 0; added > 0; ) {
+            int order = compareAt(cur, i, base, j);
+            if (order < 0) {
+                NetProtocol.putSigned(out, cur.key(i) - prev);
+                prev = cur.key(i);
+                for (int c = 0; c < Table.COLUMNS; c++) NetProtocol.putSigned(out, cur.get(i, c));
+                added--;
+                i++;
+            } else {
+                if (order == 0) i++;
+                j++;
+            }
+        }
+    }
+
+    /** Merge order of row {@code i} of {@code a} against row {@code j} of {@code b}; a finished table sorts last. */
+    private static int compareAt(Table a, int i, Table b, int j) {
+        if (i == a.size()) return 1;
+        if (j == b.size()) return -1;
+        return Integer.compare(a.key(i), b.key(j));
+    }
+
+    private static int columnMask(Table a, int i, Table b, int j) {
+        int mask = 0;
+        for (int c = 0; c < Table.COLUMNS; c++) {
+            if (a.get(i, c) != b.get(j, c)) mask |= 1 << c;
+        }
+        return mask;
+    }
+
+    /**
+     * Makes this the state {@link #encode} wrote as a delta against
+     * {@code base}. {@code base} must not be this snapshot.
+     *
+     * @throws IllegalArgumentException if the delta is malformed or doesn't fit {@code base}
+     */
+    void decode(ByteBuffer in, NetSnapshot base) {
+        int mask = NetProtocol.getVarint(in);
+        if ((mask & -(1 << HEADER)) != 0) throw new IllegalArgumentException("bad header mask");
+        for (int f = 0; f < HEADER; f++) {
+            header[f] = base.header[f] + ((mask & 1 << f) != 0 ? NetProtocol.getSigned(in) : 0);
+        }
+        decode(in, base.racers, racers);
+        decode(in, base.enemies, enemies);
+        decode(in, base.coins, coins);
+    }
+
+    private void decode(ByteBuffer in, Table base, Table out) {
+        removedKeys.clear();
+        int key = 0;
+        for (int n = NetProtocol.getVarint(in); n > 0; n--) {
+            key += NetProtocol.getSigned(in);
+            removedKeys.add(key);
+        }
+        changedRows.clear();
+        key = 0;
+        for (int n = NetProtocol.getVarint(in); n > 0; n--) {
+            key += NetProtocol.getSigned(in);
+            int mask = in.get();
+            int d0 = (mask & 1) != 0 ? NetProtocol.getSigned(in) : 0;
+            int d1 = (mask & 2) != 0 ? NetProtocol.getSigned(in) : 0;
+            int d2 = (mask & 4) != 0 ? NetProtocol.getSigned(in) : 0;
+            int d3 = (mask & 8) != 0 ? NetProtocol.getSigned(in) : 0;
+            changedRows.add(key, d0, d1, d2, d3);
+        }
+        addedRows.clear();
+        key = 0;
+        for (int n = NetProtocol.getVarint(in); n > 0; n--) {
+            key += NetProtocol.getSigned(in);
+            addedRows.add(key, NetProtocol.getSigned(in), NetProtocol.getSigned(in),
+                    NetProtocol.getSigned(in), NetProtocol.getSigned(in));
+        }
+
+        out.clear();
+        int r = 0, ch = 0, a = 0;
+        for (int j = 0; j < base.size(); j++) {
+            int k = base.key(j);
+            while (a < addedRows.size() && addedRows.key(a) < k) copyRow(addedRows, a++, out);
+            if (r < removedKeys.size() && removedKeys.get(r) == k) {
+                r++;
+                continue;
+            }
+            if (ch < changedRows.size() && changedRows.key(ch) == k) {
+                out.add(k, base.get(j, 0) + changedRows.get(ch, 0), base.get(j, 1) + changedRows.get(ch, 1),
+                        base.get(j, 2) + changedRows.get(ch, 2), base.get(j, 3) + changedRows.get(ch, 3));
+                ch++;
+            } else {
+                copyRow(base, j, out);
+            }
+        }
+        while (a < addedRows.size()) copyRow(addedRows, a++, out);
+        if (r != removedKeys.size() || ch != changedRows.size()) {
+            throw new IllegalArgumentException("delta doesn't match its base");
+        }
+    }
+
+    private static void copyRow(Table src, int row, Table out) {
+        out.add(src.key(row), src.get(row, 0), src.get(row, 1), src.get(row, 2), src.get(row, 3));
+    }
+}
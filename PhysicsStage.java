@@ -0,0 +1,179 @@
+package games.trial;
+
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Steps dynamic {@link Bodies} against a world's platforms: gravity, then a
+ * swept move by the rounded velocity.
+ *
+ * A move stops at the first platform the body would touch, zeroes the
+ * velocity along the contact normal and slides the rest of the way (a few
+ * sub-steps at most: a wall and a floor, a corner), so no velocity can
+ * tunnel through a platform. A body that starts a move inside a platform
+ * (after a teleport) is pushed out first along the shallower overlap.
+ *
+ * Bodies only collide with the static platforms, never with each other, so
+ * they are independent: {@link #step(Bodies, ForkJoinPool)} splits large sets
+ * into slices moved in parallel, each thread with its own query buffer. The
+ * platforms must not change during a step.
+ */
+final class PhysicsStage {
+    static final int PARALLEL_THRESHOLD = 4096; // fewer bodies than this aren't worth forking for
+    private static final int LEAF_BODIES = 1024;
+    private static final int MAX_SWEEPS = 3;     // sub-steps per move: enough for a wall, a floor and a corner
+
+    private final double gravity;
+    private final ArrayList<Box> platforms;
+    private final SpatialGrid platformGrid;
+    private final Mover mover = new Mover();
+    private final ThreadLocal<Mover> workerMovers = ThreadLocal.withInitial(Mover::new);
+
+    /** {@code platformGrid} must index {@code platforms} by list position and horizontal span. */
+    PhysicsStage(double gravity, ArrayList<Box> platforms, SpatialGrid platformGrid) {
+        this.gravity = gravity;
+        this.platforms = platforms;
+        this.platformGrid = platformGrid;
+    }
+
+    /** Applies gravity to every body and moves it by its velocity, on the calling thread. */
+    void step(Bodies bodies) {
+        mover.step(bodies, 0, bodies.size());
+    }
+
+    /**
+     * The first half of {@link #step(Bodies)}: applies gravity to every
+     * body's velocity. Callers timing the two halves apart run this, then
+     * {@link #move(Bodies)}.
+     */
+    void integrate(Bodies bodies) {
+        double[] vy = bodies.vy;
+        for (int i = 0, n = bodies.size(); i < n; i++) vy[i] += gravity;
+    }
+
+    /** The second half of {@link #step(Bodies)}: moves every body by its velocity, on the calling thread. */
+    void move(Bodies bodies) {
+        double[] vx = bodies.vx, vy = bodies.vy;
+        for (int i = 0, n = bodies.size(); i < n; i++) {
+            mover.move(bodies, i, (int) Math.round(vx[i]), (int) Math.round(vy[i]));
+        }
+    }
+
+    /** As {@link #step(Bodies)}, in parallel on {@code pool} when there are many bodies. */
+    void step(Bodies bodies, ForkJoinPool pool) {
+        if (bodies.size() < PARALLEL_THRESHOLD) {
+            step(bodies);
+        } else {
+            pool.invoke(new Slice(bodies, 0, bodies.size()));
+        }
+    }
+
+    /** Moves body {@code i} by {@code (dx, dy)} without applying gravity or reading its velocity. */
+    void move(Bodies bodies, int i, int dx, int dy) {
+        mover.move(bodies, i, dx, dy);
+    }
+
+    private final class Slice extends RecursiveAction {
+        private final Bodies bodies;
+        private final int from, to;
+
+        Slice(Bodies bodies, int from, int to) {
+            this.bodies = bodies;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_BODIES) {
+                workerMovers.get().step(bodies, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Slice(bodies, from, mid), new Slice(bodies, mid, to));
+        }
+    }
+
+    /** Per-thread collision scratch. */
+    private final class Mover {
+        private final IntList nearby = new IntList();
+        private final Sweep sweep = new Sweep();
+
+        void step(Bodies b, int from, int to) {
+            double[] vx = b.vx, vy = b.vy;
+            for (int i = from; i < to; i++) {
+                vy[i] += gravity;
+                move(b, i, (int) Math.round(vx[i]), (int) Math.round(vy[i]));
+            }
+        }
+
+        void move(Bodies b, int i, int dx, int dy) {
+            int x = b.x[i], y = b.y[i], w = b.w[i], h = b.h[i];
+            int contacts = 0;
+            for (int pass = 0; pass < MAX_SWEEPS && (dx != 0 || dy != 0); pass++) {
+                platformGrid.query(Math.min(x, x + dx), Math.max(x, x + dx) + w, nearby);
+                Box hit = null;
+                double hitTime = 1;
+                boolean hitSide = false;
+                for (int n = 0; n < nearby.size(); n++) {
+                    Box p = platforms.get(nearby.get(n));
+                    if (pass == 0 && x < p.x + p.width && p.x < x + w && y < p.y + p.height && p.y < y + h) {
+                        // already inside: out along the axis that overlaps least, as a discrete check would
+                        int overlapW = Math.min(x + w, p.x + p.width) - Math.max(x, p.x);
+                        int overlapH = Math.min(y + h, p.y + p.height) - Math.max(y, p.y);
+                        if (overlapH < overlapW) {
+                            if (y < p.y) {
+                                y = p.y - h;
+                                contacts |= Bodies.ON_GROUND;
+                            } else {
+                                y = p.y + p.height;
+                                contacts |= Bodies.HIT_CEILING;
+                            }
+                            b.vy[i] = 0;
+                        } else {
+                            x = x < p.x ? p.x - w : p.x + p.width;
+                            contacts |= Bodies.HIT_WALL;
+                            b.vx[i] = 0;
+                        }
+                    } else if (sweep.test(x, y, w, h, dx, dy, p) && sweep.time < hitTime) {
+                        hit = p;
+                        hitTime = sweep.time;
+                        hitSide = sweep.sideHit;
+                    }
+                }
+                if (hit == null) {
+                    x += dx;
+                    y += dy;
+                    break;
+                }
+                if (hitSide) {
+                    // stop against the wall, keep falling/rising for the rest of the move
+                    int movedY = (int) Math.round(dy * hitTime);
+                    x = dx > 0 ? hit.x - w : hit.x + hit.width;
+                    y += movedY;
+                    dx = 0;
+                    dy -= movedY;
+                    b.vx[i] = 0;
+                    contacts |= Bodies.HIT_WALL;
+                } else {
+                    int movedX = (int) Math.round(dx * hitTime);
+                    x += movedX;
+                    dx -= movedX;
+                    if (dy > 0) {
+                        y = hit.y - h; // landed on top
+                        contacts |= Bodies.ON_GROUND;
+                    } else {
+                        y = hit.y + hit.height;
+                        contacts |= Bodies.HIT_CEILING;
+                    }
+                    dy = 0;
+                    b.vy[i] = 0;
+                }
+            }
+            b.x[i] = x;
+            b.y[i] = y;
+            b.contacts[i] = contacts;
+        }
+    }
+}
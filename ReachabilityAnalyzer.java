@@ -0,0 +1,548 @@
+package games.trial;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+
+/**
+ * Checks that a level is fair without playing it: which platforms and
+ * banknotes a player can get to, and whether the flag can be reached, judged
+ * from the {@link JumpEnvelope} of the physics constants.
+ *
+ * The level is turned into a graph of spans: the x positions the player can
+ * stand at on each platform, split wherever another platform hangs low
+ * enough to be in the way. There is an edge from span A to span B if some
+ * jump from A comes down onto B in time to have moved over it, and if, when
+ * B is higher, the player can stay beside B while rising past its underside
+ * instead of hitting it. Other platforms are not in the way of a jump, so an
+ * edge can be optimistic where the level is crowded; reachability is a
+ * breadth-first search from the span under the spawn point.
+ *
+ * A banknote is reachable if the player can touch it standing on a
+ * reachable span or in flight from one, without a platform in the way. Only
+ * what starts before the flag is reported, since the run ends there. The
+ * report's impossible sections are the x ranges of unreachable platforms
+ * (merged where they overlap) and, if the flag can't be reached, the
+ * stretch from the furthest reachable span to the flag.
+ *
+ * An analyzer reuses its scratch and report between levels, so it is cheap
+ * to call in a loop but belongs to one thread; {@link #validate} checks
+ * batches of seeds in parallel with one analyzer per worker.
+ */
+final class ReachabilityAnalyzer implements LevelSource.Sink {
+    private static final int PW = GameWorld.PLAYER_WIDTH;
+    private static final int PH = GameWorld.PLAYER_HEIGHT;
+    private static final int SPAWN_FEET = GameWorld.HEIGHT - 120 + PH;
+    private static final int LEAF_SEEDS = 64; // levels analyzed sequentially by one task
+
+    /** Outcome of one {@link #analyze}; overwritten by the next. */
+    static final class Report {
+        int platforms;
+        int unreachablePlatforms;
+        int coins;
+        int unreachableCoins;
+        int spans;
+        int reachedSpans;
+        boolean completable;
+        /** Rightmost x the player's right edge gets to standing, or {@code Integer.MIN_VALUE} if nowhere. */
+        int frontier;
+        /** x, y of every unreachable banknote. */
+        final IntList unreachableCoinAt = new IntList();
+        /** Impossible sections as {@code [from, to)} x pairs, left to right. */
+        final IntList impossible = new IntList();
+
+        int impossibleSections() {
+            return impossible.size() / 2;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d/%d spans reached, %d of %d platforms and %d of %d banknotes unreachable, %d impossible sections, %s",
+                    reachedSpans, spans, unreachablePlatforms, platforms, unreachableCoins, coins,
+                    impossibleSections(), completable ? "flag reachable" : "flag unreachable");
+        }
+    }
+
+    /** Aggregated reports of a batch of seeds, merged as the batch is validated. */
+    static final class Summary {
+        long levels;
+        long blocked;              // levels whose flag can't be reached
+        long withUnreachableCoins; // levels with at least one unreachable banknote
+        long coins;
+        long unreachableCoins;
+        long platforms;
+        long unreachablePlatforms;
+        long impossibleSections;
+        long worstSeed;
+        int worstCoins = -1; // most unreachable banknotes in one level, at worstSeed
+
+        void add(long seed, Report r) {
+            levels++;
+            if (!r.completable) blocked++;
+            if (r.unreachableCoins > 0) withUnreachableCoins++;
+            coins += r.coins;
+            unreachableCoins += r.unreachableCoins;
+            platforms += r.platforms;
+            unreachablePlatforms += r.unreachablePlatforms;
+            impossibleSections += r.impossibleSections();
+            if (r.unreachableCoins > worstCoins || r.unreachableCoins == worstCoins && seed < worstSeed) {
+                worstCoins = r.unreachableCoins;
+                worstSeed = seed;
+            }
+        }
+
+        Summary merge(Summary o) {
+            levels += o.levels;
+            blocked += o.blocked;
+            withUnreachableCoins += o.withUnreachableCoins;
+            coins += o.coins;
+            unreachableCoins += o.unreachableCoins;
+            platforms += o.platforms;
+            unreachablePlatforms += o.unreachablePlatforms;
+            impossibleSections += o.impossibleSections;
+            if (o.worstCoins > worstCoins || o.worstCoins == worstCoins && o.worstSeed < worstSeed) {
+                worstCoins = o.worstCoins;
+                worstSeed = o.worstSeed;
+            }
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d levels, %d blocked, %.1f%% with unreachable banknotes (%.2f%% of %d), "
+                            + "%.2f%% of platforms unreachable, %d impossible sections, worst seed %d (%d banknotes)",
+                    levels, blocked, levels == 0 ? 0 : 100.0 * withUnreachableCoins / levels,
+                    coins == 0 ? 0 : 100.0 * unreachableCoins / coins, coins,
+                    platforms == 0 ? 0 : 100.0 * unreachablePlatforms / platforms,
+                    impossibleSections, worstSeed, Math.max(0, worstCoins));
+        }
+    }
+
+    private static final ThreadLocal<ReachabilityAnalyzer> WORKERS =
+            ThreadLocal.withInitial(() -> new ReachabilityAnalyzer(JumpEnvelope.DEFAULT));
+
+    private final JumpEnvelope jumps;
+    private final int reachRight; // furthest a jump can carry the player, each way
+    private final int reachLeft;
+    private final Report report = new Report();
+
+    // level content: x, y, w, h per object
+    private final IntList platforms = new IntList(256);
+    private final IntList coins = new IntList(512);
+
+    // spans, in x order after analyze sorts them
+    private int spanCount;
+    private int[] spanSupport = new int[64];
+    private int[] spanX0 = new int[64]; // player x range standing on the span
+    private int[] spanX1 = new int[64];
+    private int[] sortedSupport = new int[64]; // sort destinations, swapped with the three above
+    private int[] sortedX0 = new int[64];
+    private int[] sortedX1 = new int[64];
+    private boolean[] reached = new boolean[64];
+    private boolean[] supportReached = new boolean[64];
+    private long[] sortKeys = new long[64];
+    private final IntList blocked = new IntList();
+    private final IntList free = new IntList();    // free x intervals, per row in freeStart
+    private final IntList intervals = new IntList();
+    private int[] freeStart = new int[64];
+    private final IntList near = new IntList(); // offsets into platforms of those near the banknote being checked
+    private final IntList queue = new IntList();
+
+    ReachabilityAnalyzer(JumpEnvelope jumps) {
+        this.jumps = jumps;
+        reachRight = jumps.stepRight * jumps.maxAirSteps();
+        reachLeft = jumps.stepLeft * jumps.maxAirSteps();
+    }
+
+    @Override
+    public void platform(int x, int y, int w, int h) {
+        platforms.add(x);
+        platforms.add(y);
+        platforms.add(w);
+        platforms.add(h);
+    }
+
+    @Override
+    public void coin(int ordinal, int x, int y, int w, int h) {
+        coins.add(x);
+        coins.add(y);
+        coins.add(w);
+        coins.add(h);
+    }
+
+    @Override
+    public void enemy(int ordinal, int x, int y, int w, int h, int left, int right) {
+        // enemies can be stomped or jumped over, so they don't change what is reachable
+    }
+
+    /** Analyzes the first level of {@code seed}, as {@code new GameWorld(seed, levelLength)} would play it. */
+    Report analyze(long seed, int levelLength) {
+        return analyze(GameWorld.firstLevel(seed, levelLength, GameWorld.DEFAULT_ENEMY_DENSITY),
+                GameWorld.SPAWN_X, GameWorld.defaultFlagX());
+    }
+
+    /** Analyzes {@code level} for a player spawning at {@code spawnX} and finishing at {@code flagX}. */
+    Report analyze(LevelSource level, int spawnX, int flagX) {
+        platforms.clear();
+        coins.clear();
+        // nothing past a jump beyond the flag makes a difference, so the rest of the level isn't generated
+        int chunks = Math.min(level.chunkCount(), LevelStreamer.chunkOf(flagX + reachRight) + 1);
+        for (int c = 0; c < chunks; c++) level.generate(c, this);
+
+        buildSpans();
+        int start = -1;
+        for (int s = 0; s < spanCount; s++) {
+            int top = platforms.get(spanSupport[s] * 4 + 1);
+            if (spanX0[s] <= spawnX && spawnX <= spanX1[s] && top >= SPAWN_FEET
+                    && (start < 0 || top < platforms.get(spanSupport[start] * 4 + 1))) {
+                start = s;
+            }
+        }
+        search(start);
+
+        Report r = report;
+        r.spans = spanCount;
+        r.reachedSpans = 0;
+        r.frontier = Integer.MIN_VALUE;
+        int supports = platforms.size() / 4;
+        if (supportReached.length < supports) supportReached = new boolean[supports * 2];
+        Arrays.fill(supportReached, 0, supports, false);
+        for (int s = 0; s < spanCount; s++) {
+            if (!reached[s]) continue;
+            r.reachedSpans++;
+            supportReached[spanSupport[s]] = true;
+            r.frontier = Math.max(r.frontier, spanX1[s] + PW);
+        }
+        r.completable = r.frontier >= flagX;
+
+        // unreachable platforms before the flag, merged into sections in x order; past a blockade it is all one section
+        int blockade = r.completable ? flagX : r.frontier == Integer.MIN_VALUE ? spawnX : r.frontier;
+        r.platforms = 0;
+        r.unreachablePlatforms = 0;
+        if (sortKeys.length < supports) sortKeys = new long[supports * 2];
+        for (int p = 0; p < supports; p++) {
+            int x = platforms.get(p * 4);
+            if (x >= flagX) continue;
+            r.platforms++;
+            if (!supportReached[p]) {
+                sortKeys[r.unreachablePlatforms++] = (long) x << 32 | p;
+            }
+        }
+        Arrays.sort(sortKeys, 0, r.unreachablePlatforms);
+        r.impossible.clear();
+        for (int i = 0; i < r.unreachablePlatforms; i++) {
+            int p = (int) sortKeys[i];
+            int from = platforms.get(p * 4), to = Math.min(blockade, from + platforms.get(p * 4 + 2));
+            if (from >= blockade) break;
+            int n = r.impossible.size();
+            if (n > 0 && from <= r.impossible.get(n - 1)) {
+                r.impossible.set(n - 1, Math.max(to, r.impossible.get(n - 1)));
+            } else {
+                r.impossible.add(from);
+                r.impossible.add(to);
+            }
+        }
+        if (!r.completable) {
+            r.impossible.add(blockade);
+            r.impossible.add(flagX);
+        }
+
+        r.coins = 0;
+        r.unreachableCoins = 0;
+        r.unreachableCoinAt.clear();
+        for (int c = 0; c < coins.size(); c += 4) {
+            if (coins.get(c) >= flagX) continue;
+            r.coins++;
+            if (!coinReachable(coins.get(c), coins.get(c + 1), coins.get(c + 2), coins.get(c + 3))) {
+                r.unreachableCoins++;
+                r.unreachableCoinAt.add(coins.get(c));
+                r.unreachableCoinAt.add(coins.get(c + 1));
+            }
+        }
+        return r;
+    }
+
+    /** Splits every platform's top into the spans the player fits on, sorted by x. */
+    private void buildSpans() {
+        spanCount = 0;
+        int n = platforms.size() / 4;
+        for (int p = 0; p < n; p++) {
+            int px = platforms.get(p * 4), top = platforms.get(p * 4 + 1), pw = platforms.get(p * 4 + 2);
+            int x0 = px - PW + 1, x1 = px + pw - 1;
+            // player x positions where another platform is in the player's box while standing here
+            blocked.clear();
+            for (int q = 0; q < n; q++) {
+                int qx = platforms.get(q * 4), qy = platforms.get(q * 4 + 1);
+                int qw = platforms.get(q * 4 + 2), qh = platforms.get(q * 4 + 3);
+                if (q == p || qx + qw <= x0 || qx >= x1 + PW || qy >= top || qy + qh <= top - PH) continue;
+                blocked.add(qx - PW + 1);
+                blocked.add(qx + qw - 1);
+            }
+            freeIntervals(x0, x1, blocked, intervals);
+            for (int i = 0; i < intervals.size(); i += 2) addSpan(p, intervals.get(i), intervals.get(i + 1));
+        }
+
+        if (sortKeys.length < spanCount) sortKeys = new long[spanCount * 2];
+        for (int s = 0; s < spanCount; s++) sortKeys[s] = (long) spanX0[s] << 32 | s;
+        Arrays.sort(sortKeys, 0, spanCount);
+        if (sortedSupport.length < spanSupport.length) {
+            sortedSupport = new int[spanSupport.length];
+            sortedX0 = new int[spanSupport.length];
+            sortedX1 = new int[spanSupport.length];
+        }
+        for (int i = 0; i < spanCount; i++) {
+            int s = (int) sortKeys[i];
+            sortedSupport[i] = spanSupport[s];
+            sortedX0[i] = spanX0[s];
+            sortedX1[i] = spanX1[s];
+        }
+        int[] t = spanSupport; spanSupport = sortedSupport; sortedSupport = t;
+        t = spanX0; spanX0 = sortedX0; sortedX0 = t;
+        t = spanX1; spanX1 = sortedX1; sortedX1 = t;
+    }
+
+    /**
+     * Appends to {@code out} the {@code [from, to]} pairs of {@code [x0, x1]}
+     * not covered by the inclusive pairs in {@code blocked}, which it sorts.
+     */
+    private static void freeIntervals(int x0, int x1, IntList blocked, IntList out) {
+        out.clear();
+        // few blockers: order the pairs by start with an insertion sort
+        for (int i = 2; i < blocked.size(); i += 2) {
+            int b0 = blocked.get(i), b1 = blocked.get(i + 1);
+            int j = i;
+            while (j > 0 && blocked.get(j - 2) > b0) {
+                blocked.set(j, blocked.get(j - 2));
+                blocked.set(j + 1, blocked.get(j - 1));
+                j -= 2;
+            }
+            blocked.set(j, b0);
+            blocked.set(j + 1, b1);
+        }
+        int free = x0;
+        for (int i = 0; i < blocked.size() && free <= x1; i += 2) {
+            if (blocked.get(i) > free) {
+                out.add(free);
+                out.add(Math.min(x1, blocked.get(i) - 1));
+            }
+            free = Math.max(free, blocked.get(i + 1) + 1);
+        }
+        if (free <= x1) {
+            out.add(free);
+            out.add(x1);
+        }
+    }
+
+    private void addSpan(int support, int x0, int x1) {
+        if (x0 > x1) return;
+        if (spanCount == spanSupport.length) {
+            int cap = spanCount * 2;
+            spanSupport = Arrays.copyOf(spanSupport, cap);
+            spanX0 = Arrays.copyOf(spanX0, cap);
+            spanX1 = Arrays.copyOf(spanX1, cap);
+            reached = new boolean[cap];
+        }
+        spanSupport[spanCount] = support;
+        spanX0[spanCount] = x0;
+        spanX1[spanCount] = x1;
+        spanCount++;
+    }
+
+    /** Marks every span reachable from {@code start} (none if it is -1). */
+    private void search(int start) {
+        Arrays.fill(reached, 0, spanCount, false);
+        if (start < 0) return;
+        queue.clear();
+        queue.add(start);
+        reached[start] = true;
+        for (int head = 0; head < queue.size(); head++) {
+            int a = queue.get(head);
+            int a0 = spanX0[a], a1 = spanX1[a];
+            for (int b = 0; b < spanCount && spanX0[b] <= a1 + reachRight; b++) {
+                if (reached[b] || spanX1[b] < a0 - reachLeft) continue;
+                if (canJump(a, b)) {
+                    reached[b] = true;
+                    queue.add(b);
+                }
+            }
+        }
+    }
+
+    /** Whether some jump from span {@code a} lands on span {@code b}. */
+    private boolean canJump(int a, int b) {
+        int a0 = spanX0[a], a1 = spanX1[a], b0 = spanX0[b], b1 = spanX1[b];
+        int pb = spanSupport[b] * 4;
+        int bx = platforms.get(pb), bw = platforms.get(pb + 2), bh = platforms.get(pb + 3);
+        int dh = platforms.get(spanSupport[a] * 4 + 1) - platforms.get(pb + 1); // how much higher b is
+        if (dh > jumps.maxRise()) return false;
+        for (int v = 0; v < jumps.variants(); v++) {
+            int over = jumps.firstAbove(v, dh);
+            int land = jumps.landing(v, dh);
+            if (over < 0 || land < 0 || !jumps.canCover(a0, a1, b0, b1, land)) continue;
+            // from this step until the feet clear b's top the head is above b's underside: be beside b
+            int in = jumps.firstAbove(v, dh - bh - PH + 1);
+            if (in >= over) return true;
+            int left = bx - PW;
+            if (a0 <= left || a0 - left <= jumps.stepLeft * in) {
+                int at = a0 <= left ? Math.min(a1 + jumps.stepRight * in, left) : left;
+                if (jumps.canCover(at, at, b0, b1, land - in)) return true;
+            }
+            int right = bx + bw;
+            if (a1 >= right || right - a1 <= jumps.stepRight * in) {
+                int at = a1 >= right ? Math.max(a0 - jumps.stepLeft * in, right) : right;
+                if (jumps.canCover(at, at, b0, b1, land - in)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the player can touch the banknote, standing on a reached span
+     * or in flight from one: at some height its box overlaps the note's rows
+     * at an x where no platform is in the way, and the jump is in the air
+     * long enough to get there.
+     */
+    private boolean coinReachable(int cx, int cy, int cw, int ch) {
+        int c0 = cx - PW + 1, c1 = cx + cw - 1; // player x overlapping the note
+        // standing: feet at the span's top, box overlapping the note's rows (spans are clear of platforms)
+        for (int s = 0; s < spanCount && spanX0[s] <= c1; s++) {
+            int top = platforms.get(spanSupport[s] * 4 + 1);
+            if (reached[s] && spanX1[s] >= c0 && top - PH < cy + ch && top > cy) return true;
+        }
+
+        // in flight: per player top overlapping the note's rows, the x in [c0, c1] clear of platforms
+        int y0 = cy - PH + 1, rows = PH + ch - 1;
+        near.clear();
+        for (int p = 0; p < platforms.size(); p += 4) {
+            int px = platforms.get(p), pw = platforms.get(p + 2);
+            if (px + pw > c0 && px < c1 + PW) near.add(p);
+        }
+        free.clear();
+        if (freeStart.length < rows + 1) freeStart = new int[rows + 1];
+        for (int r = 0; r < rows; r++) {
+            int y = y0 + r;
+            blocked.clear();
+            for (int i = 0; i < near.size(); i++) {
+                int p = near.get(i);
+                int px = platforms.get(p), py = platforms.get(p + 1), pw = platforms.get(p + 2), ph = platforms.get(p + 3);
+                if (y < py + ph && py < y + PH) {
+                    blocked.add(px - PW + 1);
+                    blocked.add(px + pw - 1);
+                }
+            }
+            freeStart[r] = free.size();
+            freeIntervals(c0, c1, blocked, intervals);
+            for (int i = 0; i < intervals.size(); i++) free.add(intervals.get(i));
+        }
+        freeStart[rows] = free.size();
+
+        for (int s = 0; s < spanCount && spanX0[s] <= c1 + reachRight; s++) {
+            if (!reached[s] || spanX1[s] < c0 - reachLeft) continue;
+            int top = platforms.get(spanSupport[s] * 4 + 1);
+            // feet heights at which the box overlaps the note's rows, exclusive
+            int lo = top - cy - ch - PH, hi = top - cy;
+            for (int h = Math.max(lo + 1, -jumps.range), last = Math.min(hi - 1, jumps.maxRise()); h <= last; h++) {
+                int t = jumps.latestAt(h);
+                if (t < 0) continue;
+                int r = top - h - PH - y0;
+                for (int i = freeStart[r]; i < freeStart[r + 1]; i += 2) {
+                    if (jumps.canCover(spanX0[s], spanX1[s], free.get(i), free.get(i + 1), t)) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /** Analyzes the first levels of seeds {@code [baseSeed, baseSeed + count)} on {@code pool}. */
+    static Summary validate(ForkJoinPool pool, long baseSeed, int count, int levelLength) {
+        return pool.invoke(new Shard(baseSeed, levelLength, 0, count));
+    }
+
+    /**
+     * As {@link #validate(ForkJoinPool, long, int, int)}, a block of
+     * {@code block} seeds at a time, handing {@code progress} the summary so
+     * far after each block.
+     */
+    static Summary validate(ForkJoinPool pool, long baseSeed, long count, int levelLength, int block,
+                            Consumer<Summary> progress) {
+        Summary total = new Summary();
+        for (long done = 0; done < count; done += block) {
+            int n = (int) Math.min(block, count - done);
+            total.merge(validate(pool, baseSeed + done, n, levelLength));
+            progress.accept(total);
+        }
+        return total;
+    }
+
+    private static final class Shard extends RecursiveTask<Summary> {
+        private final long baseSeed;
+        private final int levelLength;
+        private final int from, to;
+
+        Shard(long baseSeed, int levelLength, int from, int to) {
+            this.baseSeed = baseSeed;
+            this.levelLength = levelLength;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected Summary compute() {
+            if (to - from <= LEAF_SEEDS) {
+                ReachabilityAnalyzer analyzer = WORKERS.get();
+                Summary summary = new Summary();
+                for (int i = from; i < to; i++) {
+                    summary.add(baseSeed + i, analyzer.analyze(baseSeed + i, levelLength));
+                }
+                return summary;
+            }
+            int mid = (from + to) >>> 1;
+            Shard left = new Shard(baseSeed, levelLength, from, mid);
+            left.fork();
+            Summary right = new Shard(baseSeed, levelLength, mid, to).compute();
+            return right.merge(left.join());
+        }
+    }
+
+    /**
+     * Validates a range of seeds on all cores, printing the running summary
+     * after each block and the rate at the end; with {@code --seed} prints
+     * the unreachable banknotes and impossible sections of one level.
+     *
+     * Run with: java -cp <classes> games.trial.ReachabilityAnalyzer [seeds] [base seed] [level length]
+     *           java -cp <classes> games.trial.ReachabilityAnalyzer --seed <seed> [level length]
+     */
+    public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--seed")) {
+            long seed = Long.parseLong(args[1]);
+            int levelLength = args.length > 2 ? Integer.parseInt(args[2]) : GameWorld.DEFAULT_LEVEL_LENGTH;
+            Report r = new ReachabilityAnalyzer(JumpEnvelope.DEFAULT).analyze(seed, levelLength);
+            System.out.println("seed " + seed + ": " + r);
+            for (int i = 0; i < r.unreachableCoinAt.size(); i += 2) {
+                System.out.printf("  unreachable banknote at x=%d, %d px above the ground%n",
+                        r.unreachableCoinAt.get(i), GameWorld.HEIGHT - 40 - r.unreachableCoinAt.get(i + 1));
+            }
+            for (int i = 0; i < r.impossible.size(); i += 2) {
+                System.out.printf("  impossible section x=[%d, %d)%n", r.impossible.get(i), r.impossible.get(i + 1));
+            }
+            return;
+        }
+        long count = args.length > 0 ? Long.parseLong(args[0]) : 100_000;
+        long baseSeed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        int levelLength = args.length > 2 ? Integer.parseInt(args[2]) : GameWorld.DEFAULT_LEVEL_LENGTH;
+        JumpEnvelope j = JumpEnvelope.DEFAULT;
+        System.out.printf("jumps: %d variants, rise up to %d px, %d steps in the air, %d/%d px per step right/left%n",
+                j.variants(), j.maxRise(), j.maxAirSteps(), j.stepRight, j.stepLeft);
+
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        validate(pool, baseSeed, 2000, levelLength); // warm-up
+        int block = (int) Math.min(count, 10_000);
+        long t0 = System.nanoTime();
+        Summary total = validate(pool, baseSeed, count, levelLength, block, s ->
+                System.out.printf("%8.2f s  %s%n", (System.nanoTime() - t0) / 1e9, s));
+        double elapsed = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("%d seeds in %.2f s on %d threads: %.0f seeds/s%n",
+                total.levels, elapsed, pool.getParallelism(), total.levels / elapsed);
+    }
+}
@@ -0,0 +1,177 @@
+package games.trial;
+
+import java.io.*;
+
+/**
+ * A recorded playthrough: the world parameters (seed, level length, enemy
+ * density) plus the buttons held on every step, and the outcome the run
+ * reached. Since a {@link GameWorld} is fully determined by its seed and its
+ * inputs, this is enough to re-simulate the run exactly.
+ *
+ * Inputs are stored as runs of identical steps. On disk each run is the XOR of
+ * its button mask with the previous run's (so a held button costs nothing)
+ * followed by the run length as a varint; a run where nothing changes is a
+ * couple of bytes however long it lasts.
+ *
+ * File layout (big-endian): magic "SMRP", version byte, seed (long), level
+ * length (int), enemy density (double), run count (varint), runs, then the
+ * outcome: step count (varint), score (int), lives (int), completed (byte).
+ */
+final class Replay {
+    private static final int MAGIC = 0x534D5250; // "SMRP"
+    private static final int VERSION = 1;
+
+    final long seed;
+    final int levelLength;
+    final double enemyDensity;
+    private final IntList runBits;
+    private final IntList runLengths;
+    // outcome reached by the recorded run
+    final long ticks;
+    final int score;
+    final int lives;
+    final boolean completed;
+
+    private Replay(long seed, int levelLength, double enemyDensity, IntList runBits, IntList runLengths,
+                   long ticks, int score, int lives, boolean completed) {
+        this.seed = seed;
+        this.levelLength = levelLength;
+        this.enemyDensity = enemyDensity;
+        this.runBits = runBits;
+        this.runLengths = runLengths;
+        this.ticks = ticks;
+        this.score = score;
+        this.lives = lives;
+        this.completed = completed;
+    }
+
+    int runCount() {
+        return runBits.size();
+    }
+
+    /** Button mask held during run {@code i}. */
+    int runBits(int i) {
+        return runBits.get(i);
+    }
+
+    /** Number of steps in run {@code i}. */
+    int runLength(int i) {
+        return runLengths.get(i);
+    }
+
+    /**
+     * Collects the inputs of a run as it is played. Call {@link #step} with the
+     * buttons of every step, then {@link #finish} once the run is over.
+     */
+    static final class Recorder {
+        private final long seed;
+        private final int levelLength;
+        private final double enemyDensity;
+        private final IntList runBits = new IntList();
+        private final IntList runLengths = new IntList();
+        private long ticks;
+
+        /** The parameters must be the ones the recorded {@link GameWorld} was created with. */
+        Recorder(long seed, int levelLength, double enemyDensity) {
+            this.seed = seed;
+            this.levelLength = levelLength;
+            this.enemyDensity = enemyDensity;
+        }
+
+        void step(int bits) {
+            int last = runBits.size() - 1;
+            if (last >= 0 && runBits.get(last) == bits && runLengths.get(last) < Integer.MAX_VALUE) {
+                runLengths.set(last, runLengths.get(last) + 1);
+            } else {
+                runBits.add(bits);
+                runLengths.add(1);
+            }
+            ticks++;
+        }
+
+        long ticks() {
+            return ticks;
+        }
+
+        /** Seals the recording with the outcome {@code world} reached. */
+        Replay finish(GameWorld world) {
+            return new Replay(seed, levelLength, enemyDensity, runBits, runLengths,
+                    ticks, world.score(), world.lives(), world.isCompleted());
+        }
+    }
+
+    void write(OutputStream os) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(os));
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeLong(seed);
+        out.writeInt(levelLength);
+        out.writeDouble(enemyDensity);
+        writeVarint(out, runBits.size());
+        int prev = 0;
+        for (int i = 0; i < runBits.size(); i++) {
+            out.writeByte(runBits.get(i) ^ prev);
+            writeVarint(out, runLengths.get(i));
+            prev = runBits.get(i);
+        }
+        writeVarint(out, ticks);
+        out.writeInt(score);
+        out.writeInt(lives);
+        out.writeBoolean(completed);
+        out.flush();
+    }
+
+    static Replay read(InputStream is) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(is));
+        if (in.readInt() != MAGIC) throw new IOException("not a replay file");
+        int version = in.readUnsignedByte();
+        if (version != VERSION) throw new IOException("unsupported replay version " + version);
+        long seed = in.readLong();
+        int levelLength = in.readInt();
+        double enemyDensity = in.readDouble();
+        int runs = (int) readVarint(in);
+        IntList runBits = new IntList(runs);
+        IntList runLengths = new IntList(runs);
+        int prev = 0;
+        for (int i = 0; i < runs; i++) {
+            prev ^= in.readUnsignedByte();
+            runBits.add(prev);
+            runLengths.add((int) readVarint(in));
+        }
+        long ticks = readVarint(in);
+        int score = in.readInt();
+        int lives = in.readInt();
+        boolean completed = in.readBoolean();
+        return new Replay(seed, levelLength, enemyDensity, runBits, runLengths, ticks, score, lives, completed);
+    }
+
+    void save(File file) throws IOException {
+        try (OutputStream os = new FileOutputStream(file)) {
+            write(os);
+        }
+    }
+
+    static Replay load(File file) throws IOException {
+        try (InputStream is = new FileInputStream(file)) {
+            return read(is);
+        }
+    }
+
+    private static void writeVarint(DataOutput out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    private static long readVarint(DataInput in) throws IOException {
+        long v = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v;
+        }
+        throw new IOException("malformed varint");
+    }
+}
@@ -0,0 +1,92 @@
+package games.trial;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+
+/**
+ * Re-simulates {@link Replay}s headlessly and checks that they reach the
+ * recorded outcome (score, lives, completion, step count). A mismatch means
+ * the simulation no longer behaves as when the replay was recorded, which is
+ * what bisecting a physics regression needs to know.
+ *
+ * Run with: java -cp <classes> games.trial.ReplayEngine <file or directory>...
+ */
+public class ReplayEngine {
+
+    /** Outcome of re-simulating one replay. */
+    static final class Result {
+        final long ticks;
+        final int score;
+        final int lives;
+        final boolean completed;
+        final boolean matches;
+
+        Result(Replay replay, GameWorld world, long ticks) {
+            this.ticks = ticks;
+            this.score = world.score();
+            this.lives = world.lives();
+            this.completed = world.isCompleted();
+            this.matches = ticks == replay.ticks && score == replay.score
+                    && lives == replay.lives && completed == replay.completed;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d ticks, score %d, lives %d, %s", ticks, score, lives,
+                    completed ? "completed" : "not completed");
+        }
+    }
+
+    /** Plays the replay's inputs on a fresh world built from its parameters. */
+    static Result run(Replay replay) {
+        GameWorld world = new GameWorld(replay.seed, replay.levelLength, replay.enemyDensity);
+        InputState input = new InputState();
+        long ticks = 0;
+        for (int i = 0; i < replay.runCount(); i++) {
+            input.setBits(replay.runBits(i));
+            for (int n = replay.runLength(i); n > 0; n--) {
+                world.step(input);
+                ticks++;
+            }
+        }
+        return new Result(replay, world, ticks);
+    }
+
+    public static void main(String[] args) throws IOException {
+        ArrayList<File> files = new ArrayList<>();
+        for (String arg : args) {
+            File f = new File(arg);
+            File[] children = f.isDirectory() ? f.listFiles((dir, name) -> name.endsWith(".rpl")) : null;
+            if (children != null) {
+                for (File c : children) files.add(c);
+            } else {
+                files.add(f);
+            }
+        }
+        if (files.isEmpty()) {
+            System.out.println("usage: ReplayEngine <file.rpl or directory>...");
+            return;
+        }
+
+        int failed = 0;
+        long ticks = 0;
+        long elapsed = 0;
+        for (File f : files) {
+            Replay replay = Replay.load(f);
+            long t0 = System.nanoTime();
+            Result result = run(replay);
+            elapsed += System.nanoTime() - t0;
+            ticks += result.ticks;
+            if (!result.matches) {
+                failed++;
+                System.out.printf("MISMATCH %s: expected %d ticks, score %d, lives %d, %s; got %s%n", f,
+                        replay.ticks, replay.score, replay.lives,
+                        replay.completed ? "completed" : "not completed", result);
+            }
+        }
+        System.out.printf("%d replays, %d mismatches, %d ticks in %.3f s (%.0f ticks/s)%n",
+                files.size(), failed, ticks, elapsed / 1e9, ticks / (elapsed / 1e9));
+        if (failed > 0) System.exit(1);
+    }
+}
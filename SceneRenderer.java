@@ -0,0 +1,312 @@
+package games.trial;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Java2D renderer for a {@link GameWorld}: static geometry from cached tiles,
+ * entities from the sprite atlas, culled to the viewport, plus the HUD.
+ * Shared by the Swing panel and the {@link GameLoop} canvas.
+ *
+ * The HUD is drawn from an image rebuilt only when the score or the lives
+ * change. For callers that repaint only what changed, the renderer records
+ * where the last frame drew the things that move and {@link #dirtyBounds}
+ * tells which part of the screen the next frame would change.
+ */
+final class SceneRenderer {
+    private static final int WIDTH = GameWorld.WIDTH;
+    private static final int HEIGHT = GameWorld.HEIGHT;
+
+    // Static geometry cached in tiles, dynamic objects culled to the viewport
+    private static final int TILE_WIDTH = 512;
+    private static final int SPRITE_SLACK = 16; // sprites draw a little outside their boxes
+    private final StaticLayer staticLayer = new StaticLayer(TILE_WIDTH, HEIGHT, this::paintStaticRegion);
+    private final SpriteAtlas sprites = new SpriteAtlas();
+    private final IntList visible = new IntList();
+    private final IntList regionPlatforms = new IntList();
+
+    // Everything a frame draws with is made once, so steady-state frames don't allocate
+    static final Color GROUND = new Color(100, 155, 100);
+    static final Color PLATFORM = new Color(100, 60, 30);
+    private static final Color POLE = new Color(100, 60, 20);
+    private static final Color FLAG = new Color(200, 20, 20);
+    private static final Color FLAG_BASE = new Color(80, 50, 30);
+    static final Font HUD_FONT = new Font("SansSerif", Font.BOLD, 16);
+    static final Font TITLE_FONT = new Font("SansSerif", Font.BOLD, 36);
+    static final Font HINT_FONT = new Font("SansSerif", Font.PLAIN, 18);
+    private static final Font PROFILE_FONT = new Font("Monospaced", Font.PLAIN, 11);
+    private static final Color PROFILE_BACK = new Color(255, 255, 255, 170);
+    private final int[] flagXs = new int[3];
+    private final int[] flagYs = new int[3];
+    // HUD labels and image, rebuilt only when the value changes
+    private static final int HUD_WIDTH = 140;
+    private static final int HUD_HEIGHT = 52;
+    private int shownScore = -1;
+    private int shownLives = -1;
+    private String scoreLabel;
+    private String livesLabel;
+    private BufferedImage hud;
+    private GraphicsConfiguration hudConfig;
+    private boolean hudStale = true;
+
+    // Screen bounds of the moving sprites drawn by the last frame, and of the frame being drawn/checked
+    private static final int PICKUP_REACH = 32; // an entity taken by the player lay within this of its box
+    private int lastMinX, lastMinY, lastMaxX, lastMaxY;
+    private int minX, minY, maxX, maxY;
+    private int drawnCoins, drawnEnemies;
+
+    private GameWorld world;
+    private int staticVersion;
+
+    private static int lerp(int from, int to, double alpha) {
+        return from + (int) Math.round((to - from) * alpha);
+    }
+
+    /** Paints platforms and ground inside {@code [x0, x1)}; rendered once per tile by {@link StaticLayer}. */
+    private void paintStaticRegion(Graphics2D g2, int x0, int x1) {
+        int flagPixelX = world.flagPixelX();
+        g2.setColor(PLATFORM);
+        world.queryPlatforms(x0, x1, regionPlatforms);
+        for (int n = 0; n < regionPlatforms.size(); n++) {
+            Box p = world.platform(regionPlatforms.get(n));
+            // if this is a ground segment and a flag is placed, draw left and right pieces leaving a gap
+            if (flagPixelX > 0 && p.y == HEIGHT - 40 && p.width > 200) {
+                int gapHalf = 12; // half width of the gap around the flag
+                int gapStart = flagPixelX - gapHalf;
+                int gapEnd = flagPixelX + gapHalf;
+                // left piece
+                int leftX = p.x;
+                int leftW = Math.min(p.width, Math.max(0, gapStart - p.x));
+                if (leftW > 0) g2.fillRect(leftX, p.y, leftW, p.height);
+                // right piece
+                int rightX = Math.max(p.x, gapEnd);
+                int rightW = Math.max(0, p.x + p.width - rightX);
+                if (rightW > 0) g2.fillRect(rightX, p.y, rightW, p.height);
+            } else {
+                g2.fillRect(p.x, p.y, p.width, p.height);
+            }
+        }
+    }
+
+    /**
+     * Draws the scene over an already cleared sky. {@code alpha} in [0, 1] is how far
+     * the frame is between the previous tick and the current one; moving objects and
+     * the camera are interpolated by it.
+     */
+    void render(GameWorld world, Graphics2D g2, double alpha, GraphicsConfiguration gc) {
+        if (world != this.world || world.staticVersion() != staticVersion) {
+            this.world = world;
+            staticVersion = world.staticVersion();
+            staticLayer.invalidate();
+        }
+        boolean running = world.isRunning();
+        Box player = world.player();
+        int flagPixelX = world.flagPixelX();
+
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        if (!running) alpha = 1.0; // nothing moves anymore: draw the final positions
+        int camX = lerp(world.prevCamX(), world.camX(), alpha);
+
+        // Translate camera
+        g2.translate(-camX, 0);
+
+        // Draw background parallax (simple)
+        g2.setColor(GROUND);
+        g2.fillRect(camX, HEIGHT - 40, WIDTH * 2, 40);
+
+        sprites.setGraphicsConfiguration(gc);
+
+        // Platforms: pre-rendered tiles, only the ones under the viewport
+        staticLayer.paint(g2, camX, WIDTH, gc);
+
+        // Coins
+        // Draw coins as euro-style banknotes (rounded rectangles with € symbol)
+        EntityStore coins = world.coins();
+        world.queryCoins(camX - SPRITE_SLACK, camX + WIDTH + SPRITE_SLACK, visible);
+        for (int n = 0; n < visible.size(); n++) {
+            int id = visible.get(n);
+            sprites.draw(g2, SpriteAtlas.BANKNOTE, coins.x[id], coins.y[id], coins.w[id], coins.h[id]);
+        }
+
+        // Enemies
+        // Enemies (draw Goomba-like sprites)
+        minX = minY = Integer.MAX_VALUE;
+        maxX = maxY = Integer.MIN_VALUE;
+        EntityStore enemies = world.enemies();
+        world.queryEnemies(camX - SPRITE_SLACK, camX + WIDTH + SPRITE_SLACK, visible);
+        for (int n = 0; n < visible.size(); n++) {
+            int id = visible.get(n);
+            // the grid indexes whole patrol ranges: skip enemies currently off screen
+            int ex = lerp(enemies.prevX[id], enemies.x[id], alpha);
+            int ew = enemies.w[id];
+            if (ex + ew < camX - SPRITE_SLACK || ex > camX + WIDTH + SPRITE_SLACK) continue;
+            sprites.draw(g2, SpriteAtlas.GOOMBA, ex, enemies.y[id], ew, enemies.h[id]);
+            include(ex - camX, enemies.y[id], ew, enemies.h[id]);
+        }
+
+        // Draw completion flag in world coordinates if placed
+        if (flagPixelX >= 0) {
+            drawFlag(g2, flagPixelX, flagXs, flagYs);
+        }
+
+        // Player (draw a woman with curly brown hair and round black glasses)
+        int playerX = lerp(world.prevPlayerX(), player.x, alpha);
+        int playerY = lerp(world.prevPlayerY(), player.y, alpha);
+        sprites.draw(g2, SpriteAtlas.PLAYER, playerX, playerY, player.width, player.height);
+        include(playerX - camX, playerY, player.width, player.height);
+        lastMinX = minX;
+        lastMinY = minY;
+        lastMaxX = maxX;
+        lastMaxY = maxY;
+        drawnCoins = world.coinCount();
+        drawnEnemies = world.enemyCount();
+
+        // Undo camera translation so HUD is fixed to the window (top-left)
+        g2.translate(camX, 0);
+        if (world.score() != shownScore) {
+            shownScore = world.score();
+            scoreLabel = "Score: " + shownScore;
+            hudStale = true;
+        }
+        if (world.lives() != shownLives) {
+            shownLives = world.lives();
+            livesLabel = "Lives: " + shownLives;
+            hudStale = true;
+        }
+        if (hudStale || gc != hudConfig) paintHud(gc);
+        g2.drawImage(hud, 0, 0, null);
+        g2.setColor(Color.black);
+
+        if (!running) {
+            if (world.isCompleted()) {
+                g2.setFont(TITLE_FONT);
+                String s = "completed";
+                int sw = g2.getFontMetrics().stringWidth(s);
+                g2.drawString(s, (WIDTH - sw) / 2, HEIGHT / 2 - 10);
+                return;
+            }
+            g2.setFont(TITLE_FONT);
+            String s = "Game Over";
+            int sw = g2.getFontMetrics().stringWidth(s);
+            g2.drawString(s, (WIDTH - sw) / 2, HEIGHT / 2 - 10);
+
+            g2.setFont(HINT_FONT);
+            String t = "Press R to restart";
+            int tw = g2.getFontMetrics().stringWidth(t);
+            g2.drawString(t, (WIDTH - tw) / 2, HEIGHT / 2 + 20);
+        }
+    }
+
+    /**
+     * Draws the completion flag planted at world x {@code poleX}: pole,
+     * pennant and the base stacked into the ground. {@code xs} and {@code ys}
+     * hold the pennant's three corners.
+     */
+    static void drawFlag(Graphics2D g2, int poleX, int[] xs, int[] ys) {
+        int poleHeight = 40;
+        int poleWidth = 4;
+        int poleY = HEIGHT - 40 - poleHeight; // ground Y is HEIGHT - 40
+        // pole
+        g2.setColor(POLE);
+        g2.fillRect(poleX - poleWidth/2, poleY, poleWidth, poleHeight + 6);
+        // flag (triangle)
+        int flagW = 20;
+        int flagH = 12;
+        xs[0] = poleX + 1;
+        ys[0] = poleY + 6;
+        xs[1] = poleX + 1 + flagW;
+        ys[1] = poleY + 6 + flagH/2;
+        xs[2] = poleX + 1;
+        ys[2] = poleY + 6 + flagH;
+        g2.setColor(FLAG);
+        g2.fillPolygon(xs, ys, 3);
+        // stacked base to look 'impilata' in the terrain
+        g2.setColor(FLAG_BASE);
+        g2.fillRect(poleX - 6, HEIGHT - 40, 12, 6);
+        g2.fillRect(poleX - 8, HEIGHT - 34, 16, 4);
+    }
+
+    private void paintHud(GraphicsConfiguration gc) {
+        if (hud == null || gc != hudConfig) {
+            hud = gc != null ? gc.createCompatibleImage(HUD_WIDTH, HUD_HEIGHT, Transparency.TRANSLUCENT)
+                    : new BufferedImage(HUD_WIDTH, HUD_HEIGHT, BufferedImage.TYPE_INT_ARGB);
+            hudConfig = gc;
+        }
+        Graphics2D g = hud.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Clear);
+            g.fillRect(0, 0, HUD_WIDTH, HUD_HEIGHT);
+            g.setComposite(AlphaComposite.SrcOver);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setColor(Color.black);
+            g.setFont(HUD_FONT);
+            g.drawString(scoreLabel, 10, 24);
+            g.drawString(livesLabel, 10, 44);
+        } finally {
+            g.dispose();
+        }
+        hudStale = false;
+    }
+
+    /** Grows the bounds being collected by a sprite's box (screen coordinates) plus the slack sprites draw with. */
+    private void include(int x, int y, int w, int h) {
+        minX = Math.min(minX, x - SPRITE_SLACK);
+        minY = Math.min(minY, y - SPRITE_SLACK);
+        maxX = Math.max(maxX, x + w + SPRITE_SLACK);
+        maxY = Math.max(maxY, y + h + SPRITE_SLACK);
+    }
+
+    /**
+     * Sets {@code out} to the part of the screen that drawing {@code world} now
+     * (with alpha 1) would change compared to the last frame, provided the
+     * camera and the platforms are where they were: the old and new places of
+     * the player and the enemies, the spot of anything the player picked up or
+     * stomped, and the HUD if its values changed. Anything else (a moved camera,
+     * changed platforms, the end-of-run text) needs a full repaint.
+     */
+    void dirtyBounds(GameWorld world, Rectangle out) {
+        int camX = world.camX();
+        minX = lastMinX;
+        minY = lastMinY;
+        maxX = lastMaxX;
+        maxY = lastMaxY;
+        Box player = world.player();
+        include(player.x - camX, player.y, player.width, player.height);
+        if (world.coinCount() != drawnCoins || world.enemyCount() != drawnEnemies) {
+            include(player.x - camX - PICKUP_REACH, player.y - PICKUP_REACH,
+                    player.width + 2 * PICKUP_REACH, player.height + 2 * PICKUP_REACH);
+        }
+        EntityStore enemies = world.enemies();
+        world.queryEnemies(camX - SPRITE_SLACK, camX + WIDTH + SPRITE_SLACK, visible);
+        for (int n = 0; n < visible.size(); n++) {
+            int id = visible.get(n);
+            int ex = enemies.x[id];
+            if (ex + enemies.w[id] < camX - SPRITE_SLACK || ex > camX + WIDTH + SPRITE_SLACK) continue;
+            include(ex - camX, enemies.y[id], enemies.w[id], enemies.h[id]);
+        }
+        if (world.score() != shownScore || world.lives() != shownLives) {
+            minX = Math.min(minX, 0);
+            minY = Math.min(minY, 0);
+            maxX = Math.max(maxX, HUD_WIDTH);
+            maxY = Math.max(maxY, HUD_HEIGHT);
+        }
+        int x0 = Math.max(0, minX), y0 = Math.max(0, minY);
+        int x1 = Math.min(WIDTH, maxX), y1 = Math.min(HEIGHT, maxY);
+        out.setBounds(x0, y0, Math.max(0, x1 - x0), Math.max(0, y1 - y0));
+    }
+
+    /** Draws the profiler's overlay lines to the right of the Score/Lives HUD, in window coordinates. */
+    void renderProfile(Graphics2D g2, FrameProfiler profiler) {
+        String[] lines = profiler.overlayLines();
+        int x = 130;
+        int y = 8;
+        int lineHeight = 13;
+        g2.setColor(PROFILE_BACK);
+        g2.fillRect(x - 4, y, 440, lines.length * lineHeight + 6);
+        g2.setColor(Color.black);
+        g2.setFont(PROFILE_FONT);
+        for (int i = 0; i < lines.length; i++) {
+            g2.drawString(lines[i], x, y + (i + 1) * lineHeight);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package games.trial;
+
+import java.util.ArrayList;
+
+/**
+ * The running totals of a run: score, lives, distance, and the points still
+ * on the banknotes and enemies of every chunk generated so far, resident or
+ * not. The world reports every event that changes them (a pickup, a stomp, a
+ * death, new forward progress, a chunk generated for the first time), so the
+ * totals are kept incrementally instead of being recounted every step.
+ * Streaming a chunk out, or in again, changes nothing here: its entities are
+ * still there to be taken.
+ *
+ * Completion conditions are {@link Rule}s over the totals. Each rule names the
+ * counters it reads, and {@link #check} only evaluates rules whose counters
+ * changed since the last check; a step where nothing was scored costs a mask
+ * test.
+ */
+final class ScoreLedger {
+    static final int COIN_VALUE = 150;  // valore di ogni banconota raccolta
+    static final int ENEMY_VALUE = 200; // valore quando si uccide un nemico
+
+    // Counters a rule can depend on
+    static final int SCORE = 1;
+    static final int REMAINING = 2; // points on the entities not taken yet
+    static final int LIVES = 4;
+    static final int DISTANCE = 8;
+    private static final int ALL = SCORE | REMAINING | LIVES | DISTANCE;
+
+    /** A condition over the totals, e.g. a completion rule. */
+    interface Rule {
+        /** Counters ({@link #SCORE}, {@link #REMAINING}, ...) whose changes can change the outcome. */
+        int dependsOn();
+
+        boolean isMet(ScoreLedger ledger);
+    }
+
+    /**
+     * Met when score plus the points still to be taken adds up to exactly
+     * {@code bound}, once every chunk of the level has been counted.
+     */
+    static Rule maxAchievableEquals(int bound) {
+        return new Rule() {
+            @Override
+            public int dependsOn() {
+                return SCORE | REMAINING;
+            }
+
+            @Override
+            public boolean isMet(ScoreLedger ledger) {
+                return ledger.wholeLevel && ledger.maxAchievable() == bound;
+            }
+        };
+    }
+
+    /** Met once forward progress reaches {@code meters}. */
+    static Rule distanceAtLeast(double meters) {
+        return new Rule() {
+            @Override
+            public int dependsOn() {
+                return DISTANCE;
+            }
+
+            @Override
+            public boolean isMet(ScoreLedger ledger) {
+                return ledger.meters() >= meters;
+            }
+        };
+    }
+
+    private final ArrayList<Rule> rules = new ArrayList<>();
+    private int score;
+    private int lives;
+    private int remaining;
+    private boolean wholeLevel; // remaining counts every chunk of the level
+    private double meters;
+    private int changed;
+
+    void addRule(Rule rule) {
+        rules.add(rule);
+    }
+
+    /**
+     * Starts over from the given totals; {@code wholeLevel} tells whether
+     * {@code remaining} counts every chunk. Every rule is due for evaluation
+     * again.
+     */
+    void reset(int score, int lives, int remaining, boolean wholeLevel, double meters) {
+        this.score = score;
+        this.lives = lives;
+        this.remaining = remaining;
+        this.wholeLevel = wholeLevel;
+        this.meters = meters;
+        changed = ALL;
+    }
+
+    int score() {
+        return score;
+    }
+
+    int lives() {
+        return lives;
+    }
+
+    double meters() {
+        return meters;
+    }
+
+    /** Points still to be taken on the banknotes and enemies counted so far. */
+    int remaining() {
+        return remaining;
+    }
+
+    /** Whether every chunk of the level has been counted into {@link #remaining}. */
+    boolean wholeLevel() {
+        return wholeLevel;
+    }
+
+    /** Score the run would reach by also taking every banknote and enemy counted so far. */
+    int maxAchievable() {
+        return score + remaining;
+    }
+
+    /**
+     * Adds the points on a chunk generated for the first time; {@code last}
+     * if it was the last of the level not counted yet.
+     */
+    void chunkCounted(int points, boolean last) {
+        remaining += points;
+        if (last) wholeLevel = true;
+        changed |= REMAINING;
+    }
+
+    void coinCollected() {
+        score += COIN_VALUE;
+        remaining -= COIN_VALUE;
+        changed |= SCORE | REMAINING;
+    }
+
+    void enemyStomped() {
+        score += ENEMY_VALUE;
+        remaining -= ENEMY_VALUE;
+        changed |= SCORE | REMAINING;
+    }
+
+    void died() {
+        lives--;
+        changed |= LIVES;
+    }
+
+    void setLives(int n) {
+        if (n != lives) changed |= LIVES;
+        lives = n;
+    }
+
+    /** Forward progress so far, in meters. */
+    void travelled(double m) {
+        if (m != meters) changed |= DISTANCE;
+        meters = m;
+    }
+
+    /**
+     * Evaluates the rules that depend on counters in {@code counters} that
+     * changed since they were last checked, and returns the first one met
+     * (null if none). Those counters count as checked afterwards.
+     */
+    Rule check(int counters) {
+        int dirty = changed & counters;
+        if (dirty == 0) return null;
+        changed &= ~counters;
+        for (int i = 0; i < rules.size(); i++) {
+            Rule r = rules.get(i);
+            if ((r.dependsOn() & dirty) != 0 && r.isMet(this)) return r;
+        }
+        return null;
+    }
+}
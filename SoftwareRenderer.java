@@ -0,0 +1,447 @@
+package games.trial;
+
+import java.awt.FontMetrics;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Draws the same scene as {@link SceneRenderer} straight into an {@code int[]}
+ * ARGB framebuffer, for frames without a display: screenshot tests, video
+ * export of replays, pixel-based agents.
+ *
+ * Everything with curves or text (the sprites, the flag, the HUD glyphs and
+ * the end-of-run titles) is rasterized once with Java2D, with the same
+ * drawing code and anti-aliasing as the Swing view, and kept as ARGB pixel
+ * arrays; a frame is then only rectangle fills and alpha blits. Java2D is
+ * never touched after a raster exists, so frames don't need AWT beyond
+ * headless image support, and they don't allocate.
+ *
+ * A frame is first turned into a draw list of fills and blits, culled to the
+ * camera; the list is then executed per band of scanlines, clipped to the
+ * band, so bands can be drawn in parallel on a {@link ForkJoinPool}.
+ *
+ * {@link #writeFrame} appends the framebuffer to a channel as raw big-endian
+ * ARGB, one frame after the other, which video tools read as
+ * {@code rawvideo} with pixel format {@code argb}.
+ */
+final class SoftwareRenderer {
+    static final int WIDTH = GameWorld.WIDTH;
+    static final int HEIGHT = GameWorld.HEIGHT;
+    private static final int SKY = 0xFF87CEEB; // 135, 206, 235, as the Swing views clear to
+    private static final int GROUND = SceneRenderer.GROUND.getRGB();
+    private static final int PLATFORM = SceneRenderer.PLATFORM.getRGB();
+    private static final int SPRITE_SLACK = 48; // entities this far off screen may still show part of their sprite
+    private static final int BAND_ROWS = 45;     // scanlines per parallel task
+
+    // draw list, six ints per command: OP_FILL x0, y0, x1, y1 (clipped), argb; or OP_BLIT left, top, raster index, 0, 0
+    private static final int OP_FILL = 0;
+    private static final int OP_BLIT = 1;
+    private final IntList commands = new IntList(256);
+    private final ArrayList<Raster> blits = new ArrayList<>();
+
+    private final int[] pixels = new int[WIDTH * HEIGHT];
+    private final SpriteAtlas atlas = new SpriteAtlas();
+    private final ArrayList<Raster> sprites = new ArrayList<>();
+    private final IntList visible = new IntList();
+    private final int[] digits = new int[10];
+    private Raster flag;
+    private Raster scoreLabel, livesLabel, completedTitle, gameOverTitle, restartHint;
+    private final Raster[] hudDigits = new Raster[10];
+    private ByteBuffer frameBytes;
+    private IntBuffer frameInts;
+
+    /** Pixels of a prerasterized drawing; {@code (offsetX, offsetY)} is the point drawn at the anchor. */
+    private static final class Raster {
+        final int kind, boxWidth, boxHeight; // sprite key
+        final int width, height, offsetX, offsetY;
+        final int advance; // for text: pen advance
+        final int[] argb;
+        final int[] rowStart, rowEnd; // non-transparent columns of each row
+
+        Raster(int kind, int boxWidth, int boxHeight, BufferedImage image, int offsetX, int offsetY, int advance) {
+            this.kind = kind;
+            this.boxWidth = boxWidth;
+            this.boxHeight = boxHeight;
+            width = image.getWidth();
+            height = image.getHeight();
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.advance = advance;
+            argb = image.getRGB(0, 0, width, height, null, 0, width);
+            rowStart = new int[height];
+            rowEnd = new int[height];
+            for (int y = 0; y < height; y++) {
+                int s = 0, e = width;
+                while (s < e && argb[y * width + s] >>> 24 == 0) s++;
+                while (e > s && argb[y * width + e - 1] >>> 24 == 0) e--;
+                rowStart[y] = s;
+                rowEnd[y] = e;
+            }
+        }
+    }
+
+    /** The framebuffer: {@code WIDTH * HEIGHT} opaque ARGB pixels, row by row. */
+    int[] pixels() {
+        return pixels;
+    }
+
+    /** Draws the scene, on the calling thread. {@code alpha} interpolates as in {@link SceneRenderer#render}. */
+    void render(GameWorld world, double alpha) {
+        buildDrawList(world, alpha);
+        drawBand(0, HEIGHT);
+    }
+
+    /** As {@link #render(GameWorld, double)}, with the scanline bands drawn in parallel on {@code pool}. */
+    void render(GameWorld world, double alpha, ForkJoinPool pool) {
+        buildDrawList(world, alpha);
+        pool.invoke(new Bands(0, HEIGHT));
+    }
+
+    private final class Bands extends RecursiveAction {
+        private final int y0, y1;
+
+        Bands(int y0, int y1) {
+            this.y0 = y0;
+            this.y1 = y1;
+        }
+
+        @Override
+        protected void compute() {
+            if (y1 - y0 <= BAND_ROWS) {
+                drawBand(y0, y1);
+                return;
+            }
+            int mid = y0 + (y1 - y0) / 2;
+            invokeAll(new Bands(y0, mid), new Bands(mid, y1));
+        }
+    }
+
+    // --- draw list, in the order SceneRenderer paints ---
+
+    private void buildDrawList(GameWorld world, double alpha) {
+        commands.clear();
+        blits.clear();
+        boolean running = world.isRunning();
+        if (!running) alpha = 1.0;
+        int camX = lerp(world.prevCamX(), world.camX(), alpha);
+
+        fill(0, 0, WIDTH, HEIGHT, SKY);
+        fill(0, HEIGHT - 40, WIDTH, 40, GROUND);
+
+        // platforms, with the gap SceneRenderer leaves around a planted flag
+        int flagPixelX = world.flagPixelX();
+        world.queryPlatforms(camX, camX + WIDTH, visible);
+        for (int n = 0; n < visible.size(); n++) {
+            Box p = world.platform(visible.get(n));
+            if (flagPixelX > 0 && p.y == HEIGHT - 40 && p.width > 200) {
+                int gapStart = flagPixelX - 12;
+                int gapEnd = flagPixelX + 12;
+                int leftW = Math.min(p.width, Math.max(0, gapStart - p.x));
+                if (leftW > 0) fill(p.x - camX, p.y, leftW, p.height, PLATFORM);
+                int rightX = Math.max(p.x, gapEnd);
+                int rightW = Math.max(0, p.x + p.width - rightX);
+                if (rightW > 0) fill(rightX - camX, p.y, rightW, p.height, PLATFORM);
+            } else {
+                fill(p.x - camX, p.y, p.width, p.height, PLATFORM);
+            }
+        }
+
+        EntityStore coins = world.coins();
+        world.queryCoins(camX - SPRITE_SLACK, camX + WIDTH + SPRITE_SLACK, visible);
+        for (int n = 0; n < visible.size(); n++) {
+            int id = visible.get(n);
+            blit(sprite(SpriteAtlas.BANKNOTE, coins.w[id], coins.h[id]), coins.x[id] - camX, coins.y[id]);
+        }
+
+        EntityStore enemies = world.enemies();
+        world.queryEnemies(camX - SPRITE_SLACK, camX + WIDTH + SPRITE_SLACK, visible);
+        for (int n = 0; n < visible.size(); n++) {
+            int id = visible.get(n);
+            int ex = lerp(enemies.prevX[id], enemies.x[id], alpha);
+            if (ex + enemies.w[id] < camX - SPRITE_SLACK || ex > camX + WIDTH + SPRITE_SLACK) continue;
+            blit(sprite(SpriteAtlas.GOOMBA, enemies.w[id], enemies.h[id]), ex - camX, enemies.y[id]);
+        }
+
+        if (flagPixelX >= 0) {
+            if (flag == null) flag = rasterizeFlag();
+            blit(flag, flagPixelX - camX, 0);
+        }
+
+        Box player = world.player();
+        int playerX = lerp(world.prevPlayerX(), player.x, alpha);
+        int playerY = lerp(world.prevPlayerY(), player.y, alpha);
+        blit(sprite(SpriteAtlas.PLAYER, player.width, player.height), playerX - camX, playerY);
+
+        // HUD: labels and digits laid out by their advances, as drawString would
+        if (scoreLabel == null) rasterizeText();
+        number(scoreLabel, world.score(), 10, 24);
+        number(livesLabel, world.lives(), 10, 44);
+
+        if (!running) {
+            if (world.isCompleted()) {
+                blit(completedTitle, (WIDTH - completedTitle.advance) / 2, HEIGHT / 2 - 10);
+            } else {
+                blit(gameOverTitle, (WIDTH - gameOverTitle.advance) / 2, HEIGHT / 2 - 10);
+                blit(restartHint, (WIDTH - restartHint.advance) / 2, HEIGHT / 2 + 20);
+            }
+        }
+    }
+
+    private static int lerp(int from, int to, double alpha) {
+        return from + (int) Math.round((to - from) * alpha);
+    }
+
+    private void fill(int x, int y, int w, int h, int argb) {
+        int x0 = Math.max(0, x), x1 = Math.min(WIDTH, x + w);
+        int y0 = Math.max(0, y), y1 = Math.min(HEIGHT, y + h);
+        if (x0 >= x1 || y0 >= y1) return;
+        commands.add(OP_FILL);
+        commands.add(x0);
+        commands.add(y0);
+        commands.add(x1);
+        commands.add(y1);
+        commands.add(argb);
+    }
+
+    /** Queues {@code r} with its anchor at screen {@code (x, y)}, if any of it is on screen. */
+    private void blit(Raster r, int x, int y) {
+        int left = x - r.offsetX, top = y - r.offsetY;
+        if (left >= WIDTH || top >= HEIGHT || left + r.width <= 0 || top + r.height <= 0) return;
+        commands.add(OP_BLIT);
+        commands.add(left);
+        commands.add(top);
+        commands.add(blits.size());
+        commands.add(0);
+        commands.add(0);
+        blits.add(r);
+    }
+
+    /** Queues {@code label} followed by the decimal digits of {@code value}, with the pen at {@code (x, baseline)}. */
+    private void number(Raster label, int value, int x, int baseline) {
+        blit(label, x, baseline);
+        x += label.advance;
+        if (value < 0) value = 0; // never negative in a run
+        int n = 0;
+        do {
+            digits[n++] = value % 10;
+            value /= 10;
+        } while (value > 0);
+        while (n > 0) {
+            Raster d = hudDigits[digits[--n]];
+            blit(d, x, baseline);
+            x += d.advance;
+        }
+    }
+
+    // --- executing the draw list ---
+
+    private void drawBand(int y0, int y1) {
+        int[] px = pixels;
+        for (int c = 0; c < commands.size(); c += 6) {
+            int op = commands.get(c);
+            int x = commands.get(c + 1), y = commands.get(c + 2);
+            if (op == OP_FILL) {
+                int x1 = commands.get(c + 3), yEnd = Math.min(y1, commands.get(c + 4));
+                int argb = commands.get(c + 5);
+                for (int row = Math.max(y, y0); row < yEnd; row++) {
+                    Arrays.fill(px, row * WIDTH + x, row * WIDTH + x1, argb);
+                }
+            } else {
+                blitBand(blits.get(commands.get(c + 3)), x, y, y0, y1);
+            }
+        }
+    }
+
+    private void blitBand(Raster r, int left, int top, int y0, int y1) {
+        int[] px = pixels;
+        int[] src = r.argb;
+        int rowFrom = Math.max(top, y0), rowTo = Math.min(top + r.height, y1);
+        for (int row = rowFrom; row < rowTo; row++) {
+            int sy = row - top;
+            int sx0 = Math.max(r.rowStart[sy], -left);
+            int sx1 = Math.min(r.rowEnd[sy], WIDTH - left);
+            int s = sy * r.width;
+            int d = row * WIDTH + left;
+            for (int sx = sx0; sx < sx1; sx++) {
+                int argb = src[s + sx];
+                int a = argb >>> 24;
+                if (a == 255) {
+                    px[d + sx] = argb;
+                } else if (a != 0) {
+                    int under = px[d + sx];
+                    int na = 255 - a;
+                    int red = (((argb >> 16) & 0xFF) * a + ((under >> 16) & 0xFF) * na + 127) / 255;
+                    int green = (((argb >> 8) & 0xFF) * a + ((under >> 8) & 0xFF) * na + 127) / 255;
+                    int blue = ((argb & 0xFF) * a + (under & 0xFF) * na + 127) / 255;
+                    px[d + sx] = 0xFF000000 | red << 16 | green << 8 | blue;
+                }
+            }
+        }
+    }
+
+    // --- rasters, made once with the Swing view's own drawing code ---
+
+    private Raster sprite(int kind, int w, int h) {
+        for (int i = 0; i < sprites.size(); i++) {
+            Raster r = sprites.get(i);
+            if (r.kind == kind && r.boxWidth == w && r.boxHeight == h) return r;
+        }
+        SpriteAtlas.Sprite s = atlas.sprite(kind, w, h);
+        Raster r = new Raster(kind, w, h, s.image, s.offsetX, s.offsetY, 0);
+        sprites.add(r);
+        return r;
+    }
+
+    /** The flag with its pole at image x 10, top at screen y 0 (it is always planted on the ground). */
+    private static Raster rasterizeFlag() {
+        int top = HEIGHT - 90;
+        BufferedImage img = new BufferedImage(40, 70, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = antialiased(img);
+        try {
+            g.translate(10, -top);
+            SceneRenderer.drawFlag(g, 0, new int[3], new int[3]);
+        } finally {
+            g.dispose();
+        }
+        return new Raster(-1, 0, 0, img, 10, -top, 0);
+    }
+
+    private void rasterizeText() {
+        scoreLabel = text("Score: ", SceneRenderer.HUD_FONT);
+        livesLabel = text("Lives: ", SceneRenderer.HUD_FONT);
+        for (int d = 0; d < 10; d++) hudDigits[d] = text(String.valueOf(d), SceneRenderer.HUD_FONT);
+        completedTitle = text("completed", SceneRenderer.TITLE_FONT);
+        gameOverTitle = text("Game Over", SceneRenderer.TITLE_FONT);
+        restartHint = text("Press R to restart", SceneRenderer.HINT_FONT);
+    }
+
+    /** {@code s} in black, anchored at the start of its baseline. */
+    private static Raster text(String s, Font font) {
+        BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D pg = antialiased(probe);
+        FontMetrics fm = pg.getFontMetrics(font);
+        pg.dispose();
+        int pad = 4;
+        int advance = fm.stringWidth(s);
+        BufferedImage img = new BufferedImage(advance + 2 * pad, fm.getAscent() + fm.getDescent() + 2 * pad,
+                BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = antialiased(img);
+        try {
+            g.setColor(java.awt.Color.black);
+            g.setFont(font);
+            g.drawString(s, pad, pad + fm.getAscent());
+        } finally {
+            g.dispose();
+        }
+        return new Raster(-1, 0, 0, img, pad, pad + fm.getAscent(), advance);
+    }
+
+    private static Graphics2D antialiased(BufferedImage img) {
+        Graphics2D g = img.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        return g;
+    }
+
+    // --- raw frame output ---
+
+    /** Appends the framebuffer to {@code out} as {@code WIDTH * HEIGHT} big-endian ARGB ints. */
+    void writeFrame(WritableByteChannel out) throws IOException {
+        if (frameBytes == null) {
+            frameBytes = ByteBuffer.allocateDirect(pixels.length * 4);
+            frameInts = frameBytes.asIntBuffer();
+        }
+        frameInts.clear();
+        frameInts.put(pixels);
+        frameBytes.clear();
+        while (frameBytes.hasRemaining()) out.write(frameBytes);
+    }
+
+    /**
+     * Renders every step of a replay to a raw video file, or with
+     * {@code --bench} measures frames per second on one thread and in
+     * parallel.
+     *
+     * Run with: java -cp <classes> games.trial.SoftwareRenderer <replay.rpl> <frames.raw>
+     *      or: java -cp <classes> games.trial.SoftwareRenderer --bench [seconds]
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length >= 1 && args[0].equals("--bench")) {
+            bench(args.length > 1 ? Double.parseDouble(args[1]) : 3.0);
+            return;
+        }
+        if (args.length < 2) {
+            System.out.println("usage: SoftwareRenderer <replay.rpl> <frames.raw> | --bench [seconds]");
+            return;
+        }
+        Replay replay = Replay.load(new File(args[0]));
+        GameWorld world = new GameWorld(replay.seed, replay.levelLength, replay.enemyDensity);
+        SoftwareRenderer renderer = new SoftwareRenderer();
+        InputState input = new InputState();
+        long frames = 0;
+        long t0 = System.nanoTime();
+        try (FileChannel out = FileChannel.open(new File(args[1]).toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            renderer.render(world, 1.0);
+            renderer.writeFrame(out);
+            frames++;
+            for (int i = 0; i < replay.runCount(); i++) {
+                input.setBits(replay.runBits(i));
+                for (int n = replay.runLength(i); n > 0; n--) {
+                    world.step(input);
+                    renderer.render(world, 1.0);
+                    renderer.writeFrame(out);
+                    frames++;
+                }
+            }
+        }
+        double elapsed = (System.nanoTime() - t0) / 1e9;
+        System.out.printf("%d frames in %.2f s (%.0f frames/s); play with:%n"
+                        + "  ffplay -f rawvideo -pixel_format argb -video_size %dx%d -framerate 60 %s%n",
+                frames, elapsed, frames / elapsed, WIDTH, HEIGHT, args[1]);
+    }
+
+    private static void bench(double seconds) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        ForkJoinPool pool = new ForkJoinPool(cores);
+        for (int parallel = 0; parallel < 2; parallel++) {
+            GameWorld world = new GameWorld(42, GameWorld.DEFAULT_LEVEL_LENGTH);
+            SoftwareRenderer renderer = new SoftwareRenderer();
+            InputState input = new InputState();
+            long frames = 0, renderNanos = 0;
+            long deadline = System.nanoTime() + (long) ((seconds + 1) * 1e9);
+            long measureFrom = System.nanoTime() + 1_000_000_000L; // first second is warm-up
+            for (long tick = 0; System.nanoTime() < deadline; tick++) {
+                input.setBits(HeadlessRunner.botInput(tick));
+                world.step(input);
+                if (!world.isRunning()) world.restart();
+                long t0 = System.nanoTime();
+                if (parallel == 1) {
+                    renderer.render(world, 1.0, pool);
+                } else {
+                    renderer.render(world, 1.0);
+                }
+                if (t0 >= measureFrom) {
+                    renderNanos += System.nanoTime() - t0;
+                    frames++;
+                }
+            }
+            System.out.printf("%s: %d frames, %.0f frames/s, %.1f us/frame%n",
+                    parallel == 1 ? "bands on " + cores + " threads" : "calling thread", frames, frames / (renderNanos / 1e9),
+                    renderNanos / 1e3 / frames);
+        }
+        pool.shutdown();
+    }
+}
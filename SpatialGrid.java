@@ -0,0 +1,128 @@
+package games.trial;
+
+/**
+ * Broad-phase index: a uniform grid of buckets keyed on world X.
+ *
+ * The level is a long horizontal strip, so a 1-D grid is enough: every object
+ * is registered (by an integer id chosen by the caller) in all the cells its
+ * horizontal span touches, and a query only visits the cells covering the
+ * requested span. Objects that straddle several cells are reported once.
+ *
+ * The grid only has to hold what is resident at a time, not the whole level,
+ * so its buckets wrap around: world cell {@code c} goes in bucket
+ * {@code c mod count}, and {@code extent} need only cover the span the objects
+ * registered at once spread over. Each entry keeps the first and last world
+ * cell of its object, so objects a whole ring apart that share a bucket are
+ * told apart; objects spread wider than the extent keep the grid correct,
+ * only slower.
+ */
+final class SpatialGrid {
+    private final int originX;
+    private final int cellSize;
+    private final IntList[] cells; // per bucket: triples of (id, first cell, last cell of that id)
+
+    SpatialGrid(int originX, int extent, int cellSize) {
+        this.originX = originX;
+        this.cellSize = cellSize;
+        int count = Math.max(1, (extent + cellSize - 1) / cellSize);
+        this.cells = new IntList[count];
+    }
+
+    private int cellOf(int x) {
+        return Math.floorDiv(x - originX, cellSize);
+    }
+
+    private int bucketOf(int cell) {
+        return Math.floorMod(cell, cells.length);
+    }
+
+    /** Last cell of a span starting in {@code c0} that gets its own bucket: a wider span is in every bucket once. */
+    private int lastBucketed(int c0, int c1) {
+        return Math.min(c1, c0 + cells.length - 1);
+    }
+
+    /** Registers {@code id} for the horizontal span {@code [x, x + width)}. */
+    void insert(int id, int x, int width) {
+        int c0 = cellOf(x);
+        int c1 = cellOf(x + Math.max(0, width - 1));
+        int end = lastBucketed(c0, c1);
+        for (int c = c0; c <= end; c++) {
+            int b = bucketOf(c);
+            IntList cell = cells[b];
+            if (cell == null) {
+                cell = new IntList(12);
+                cells[b] = cell;
+            }
+            cell.add(id);
+            cell.add(c0);
+            cell.add(c1);
+        }
+    }
+
+    /** Unregisters {@code id}; the span must be the one it was inserted with. */
+    void remove(int id, int x, int width) {
+        int c0 = cellOf(x);
+        int end = lastBucketed(c0, cellOf(x + Math.max(0, width - 1)));
+        for (int c = c0; c <= end; c++) {
+            IntList cell = cells[bucketOf(c)];
+            if (cell == null) continue;
+            for (int i = 0; i < cell.size(); i += 3) {
+                if (cell.get(i) == id) {
+                    // swap-remove the (id, first, last) triple
+                    int last = cell.size() - 3;
+                    cell.set(i, cell.get(last));
+                    cell.set(i + 1, cell.get(last + 1));
+                    cell.set(i + 2, cell.get(last + 2));
+                    cell.truncate(last);
+                    break;
+                }
+            }
+        }
+    }
+
+    /** Re-registers an object under a new id (used when the owner swap-removes its storage). */
+    void rename(int oldId, int newId, int x, int width) {
+        int c0 = cellOf(x);
+        int end = lastBucketed(c0, cellOf(x + Math.max(0, width - 1)));
+        for (int c = c0; c <= end; c++) {
+            IntList cell = cells[bucketOf(c)];
+            if (cell == null) continue;
+            for (int i = 0; i < cell.size(); i += 3) {
+                if (cell.get(i) == oldId) {
+                    cell.set(i, newId);
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Appends to {@code out} the ids of every object whose span may overlap
+     * {@code [minX, maxX]}. The buffer is cleared first.
+     */
+    void query(int minX, int maxX, IntList out) {
+        out.clear();
+        int q0 = cellOf(minX);
+        int q1 = cellOf(maxX);
+        int end = lastBucketed(q0, q1);
+        for (int c = q0; c <= end; c++) {
+            int b = bucketOf(c);
+            IntList cell = cells[b];
+            if (cell == null) continue;
+            for (int i = 0; i < cell.size(); i += 3) {
+                int first = cell.get(i + 1);
+                // skip objects of another lap of the ring; report a straddling object
+                // only from the bucket of the first queried cell it occupies
+                if (first <= q1 && cell.get(i + 2) >= q0 && bucketOf(Math.max(first, q0)) == b) {
+                    out.add(cell.get(i));
+                }
+            }
+        }
+    }
+
+    void clear() {
+        for (IntList cell : cells) {
+            if (cell != null) cell.clear();
+        }
+    }
+}
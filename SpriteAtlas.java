@@ -0,0 +1,218 @@
+package games.trial;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.ArrayList;
+
+/**
+ * Sprite cache for the animated entities (banknotes, Goombas, the player).
+ *
+ * Each kind of sprite is rasterized once per size into a compatible translucent
+ * image, with anti-aliasing, and then drawn with a single {@code drawImage}.
+ * Sprites are keyed by kind, width and height; only a handful of sizes exist in
+ * a level, so lookup is a short linear scan that doesn't allocate.
+ */
+final class SpriteAtlas {
+    static final int BANKNOTE = 0;
+    static final int GOOMBA = 1;
+    static final int PLAYER = 2;
+
+    /** A rasterized sprite; {@code (offsetX, offsetY)} is where the entity's box origin sits in the image. */
+    static final class Sprite {
+        final int kind, width, height;
+        final int offsetX, offsetY;
+        final BufferedImage image;
+
+        Sprite(int kind, int width, int height, int offsetX, int offsetY, BufferedImage image) {
+            this.kind = kind;
+            this.width = width;
+            this.height = height;
+            this.offsetX = offsetX;
+            this.offsetY = offsetY;
+            this.image = image;
+        }
+    }
+
+    private final ArrayList<Sprite> sprites = new ArrayList<>();
+    private GraphicsConfiguration gc;
+
+    /** Selects the device the sprites are created for; cached sprites are dropped if it changes. */
+    void setGraphicsConfiguration(GraphicsConfiguration config) {
+        if (config != null && config != gc) {
+            gc = config;
+            sprites.clear();
+        }
+    }
+
+    /** Draws the sprite of the given kind for the entity box {@code (x, y, w, h)}. */
+    void draw(Graphics2D g, int kind, int x, int y, int w, int h) {
+        Sprite s = sprite(kind, w, h);
+        g.drawImage(s.image, x - s.offsetX, y - s.offsetY, null);
+    }
+
+    Sprite sprite(int kind, int w, int h) {
+        for (int i = 0; i < sprites.size(); i++) {
+            Sprite s = sprites.get(i);
+            if (s.kind == kind && s.width == w && s.height == h) return s;
+        }
+        Sprite s = rasterize(kind, w, h);
+        sprites.add(s);
+        return s;
+    }
+
+    private Sprite rasterize(int kind, int w, int h) {
+        // the drawings spill outside the entity box (hair, shadow, feet): leave room around it
+        int pad = 12 + h / 6;
+        int iw = w + 2 * pad;
+        int ih = h + 2 * pad;
+        BufferedImage img = gc != null
+                ? gc.createCompatibleImage(iw, ih, Transparency.TRANSLUCENT)
+                : new BufferedImage(iw, ih, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g2 = img.createGraphics();
+        try {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            switch (kind) {
+                case BANKNOTE: drawBanknote(g2, pad, pad, w, h); break;
+                case GOOMBA: drawGoomba(g2, pad, pad, w, h); break;
+                case PLAYER: drawPlayer(g2, pad, pad, w, h); break;
+                default: throw new IllegalArgumentException("unknown sprite kind " + kind);
+            }
+        } finally {
+            g2.dispose();
+        }
+        return new Sprite(kind, w, h, pad, pad, img);
+    }
+
+    // Draw coins as euro-style banknotes (rounded rectangles with € symbol)
+    static void drawBanknote(Graphics2D g2, int x, int y, int bw, int bh) {
+        // outer card
+        g2.setColor(new Color(200, 230, 180)); // light green-ish banknote base
+        g2.fillRoundRect(x, y, bw, bh, 6, 6);
+        // inner stripe
+        g2.setColor(new Color(170, 210, 150));
+        g2.fillRoundRect(x + 3, y + 3, bw - 6, bh - 6, 4, 4);
+        // small emblem circle on left
+        g2.setColor(new Color(120, 150, 100));
+        g2.fillOval(x + 3, y + bh/2 - 6, 12, 12);
+        // decorative horizontal lines (print details)
+        g2.setColor(new Color(120, 140, 110));
+        g2.setStroke(new BasicStroke(1f));
+        int startX = x + bw/2 - 8;
+        for (int i = 0; i < 3; i++) {
+            int ly = y + 3 + i * 4;
+            g2.drawLine(startX, ly, startX + 12, ly);
+        }
+        // euro symbol on right
+        g2.setColor(new Color(20, 60, 20));
+        g2.setFont(new Font("SansSerif", Font.BOLD, Math.max(10, bh - 2)));
+        FontMetrics fm = g2.getFontMetrics();
+        String euro = "€";
+        int ex = x + bw - fm.stringWidth(euro) - 4;
+        int ey = y + (bh + fm.getAscent())/2 - 2;
+        g2.drawString(euro, ex, ey);
+    }
+
+    // Goomba-like enemy
+    static void drawGoomba(Graphics2D g2, int ex, int ey, int ew, int eh) {
+        // shadow under enemy
+        g2.setColor(new Color(30, 30, 30, 100));
+        g2.fillOval(ex + ew/4, ey + eh - 4, ew/2, 6);
+
+        // body (rounded)
+        g2.setColor(new Color(150, 75, 30)); // brown
+        g2.fillRoundRect(ex, ey, ew, eh, ew/2, eh/2);
+
+        // darker top (cap)
+        g2.setColor(new Color(120, 60, 20));
+        g2.fillArc(ex, ey - eh/6, ew, eh/2, 0, 180);
+
+        // eyes
+        int eyeW = Math.max(3, ew/5);
+        int eyeH = Math.max(3, eh/5);
+        int leftEyeX = ex + ew/4 - eyeW/2;
+        int rightEyeX = ex + 3*ew/4 - eyeW/2 - 2;
+        int eyeY = ey + eh/4;
+        g2.setColor(Color.white);
+        g2.fillOval(leftEyeX, eyeY, eyeW, eyeH);
+        g2.fillOval(rightEyeX, eyeY, eyeW, eyeH);
+        g2.setColor(Color.black);
+        g2.fillOval(leftEyeX + eyeW/3, eyeY + eyeH/4, Math.max(2, eyeW/2), Math.max(2, eyeH/2));
+        g2.fillOval(rightEyeX + eyeW/3, eyeY + eyeH/4, Math.max(2, eyeW/2), Math.max(2, eyeH/2));
+
+        // angry eyebrows
+        g2.setStroke(new BasicStroke(2f));
+        g2.setColor(new Color(70, 35, 10));
+        g2.drawLine(leftEyeX, eyeY - 2, leftEyeX + eyeW, eyeY - 4);
+        g2.drawLine(rightEyeX + eyeW, eyeY - 2, rightEyeX, eyeY - 4);
+
+        // feet
+        g2.setColor(new Color(60, 30, 10));
+        int footW = Math.max(6, ew/3);
+        int footH = Math.max(4, eh/6);
+        g2.fillRect(ex + 4, ey + eh - footH/2, footW, footH);
+        g2.fillRect(ex + ew - footW - 4, ey + eh - footH/2, footW, footH);
+    }
+
+    // Player: a woman with curly brown hair and round black glasses
+    static void drawPlayer(Graphics2D g2, int px, int py, int pw, int ph) {
+        // Hair: draw multiple dark-brown ovals around the head to suggest curls
+        g2.setColor(new Color(95, 57, 19)); // dark brown
+        int hairTop = py - 6;
+        int hairLeft = px - 4;
+        int hairRight = px + pw - 4;
+        // top curls
+        g2.fillOval(hairLeft, hairTop, pw/2, ph/3);
+        g2.fillOval(px + pw/4, hairTop - 4, pw/2 + 4, ph/3 + 4);
+        g2.fillOval(hairRight - pw/2, hairTop, pw/2, ph/3);
+        // side curls
+        g2.fillOval(px - 6, py + 2, 10, 10);
+        g2.fillOval(px + pw - 4, py + 2, 10, 10);
+        // back hair under chin area
+        g2.fillOval(px - 2, py + ph/4, pw + 4, ph/2);
+
+        // Face (skin tone)
+        g2.setColor(new Color(255, 220, 180));
+        g2.fillOval(px + 4, py + 4, pw - 8, ph/2 - 2);
+
+        // Glasses: round black frames
+        int glassSize = 10;
+        int gx = px + pw/2 - glassSize - 2;
+        int gy = py + ph/6 + 2;
+        g2.setColor(Color.black);
+        g2.fillOval(gx, gy, glassSize, glassSize);
+        g2.fillOval(gx + glassSize + 4, gy, glassSize, glassSize);
+        // bridge
+        g2.fillRect(gx + glassSize, gy + glassSize/2 - 1, 4, 2);
+        // lenses (slightly lighter inside to simulate glass)
+        g2.setColor(new Color(230, 230, 240, 200));
+        g2.fillOval(gx + 2, gy + 2, glassSize - 4, glassSize - 4);
+        g2.fillOval(gx + glassSize + 6, gy + 2, glassSize - 4, glassSize - 4);
+
+        // Eyes behind glasses (small dark pupils)
+        g2.setColor(new Color(30, 30, 30));
+        g2.fillOval(gx + 3, gy + 3, 3, 3);
+        g2.fillOval(gx + glassSize + 7, gy + 3, 3, 3);
+
+        // Mouth
+        g2.setColor(new Color(160, 40, 60));
+        g2.fillOval(px + pw/2 - 6, py + ph/3 + 8, 12, 6);
+
+        // Shirt/top (soft color)
+        g2.setColor(new Color(200, 100, 140)); // muted pink/mauve
+        g2.fillRect(px + 2, py + ph/2 - 2, pw - 4, ph/3);
+
+        // Arms (simple)
+        g2.setColor(new Color(255, 220, 180));
+        g2.fillRect(px - 4, py + ph/2, 6, ph/6);
+        g2.fillRect(px + pw - 2, py + ph/2, 6, ph/6);
+
+        // Skirt/legs
+        g2.setColor(new Color(120, 70, 150));
+        g2.fillRect(px + 4, py + ph/2 + ph/6, pw - 8, ph/6);
+
+        // Shoes
+        g2.setColor(new Color(60, 40, 30));
+        g2.fillRect(px + 6, py + ph - 8, 8, 6);
+        g2.fillRect(px + pw - 14, py + ph - 8, 8, 6);
+    }
+}
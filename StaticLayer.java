@@ -0,0 +1,108 @@
+package games.trial;
+
+import java.awt.AlphaComposite;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+
+/**
+ * Cache of pre-rendered tiles for geometry that never moves (platforms, ground,
+ * the flag gap). Each tile covers a fixed-width vertical slice of the world and
+ * is rendered once through a {@link RegionPainter}, then blitted every frame.
+ *
+ * Only a handful of tiles around the camera are kept in fixed slots; the least
+ * recently used one is recycled, so memory and paint time don't depend on the
+ * level length.
+ */
+final class StaticLayer {
+
+    /** Draws the static geometry that falls inside the world span {@code [x0, x1)}. */
+    interface RegionPainter {
+        void paintRegion(Graphics2D g, int x0, int x1);
+    }
+
+    private static final int SLOTS = 8;
+
+    private final int tileWidth;
+    private final int tileHeight;
+    private final RegionPainter painter;
+    // small fixed set of tile slots; a slot holds the tile with index slotTile[i], or none
+    private final BufferedImage[] slotImage = new BufferedImage[SLOTS];
+    private final int[] slotTile = new int[SLOTS];
+    private final boolean[] slotValid = new boolean[SLOTS];
+    private final long[] slotUsed = new long[SLOTS];
+    private long frame;
+    private GraphicsConfiguration gc;
+
+    StaticLayer(int tileWidth, int tileHeight, RegionPainter painter) {
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.painter = painter;
+    }
+
+    /** Drops every cached tile; call whenever static geometry changes. */
+    void invalidate() {
+        for (int i = 0; i < SLOTS; i++) slotValid[i] = false;
+    }
+
+    /**
+     * Blits the tiles covering {@code [camX, camX + viewWidth)}. The graphics
+     * must already be translated to world coordinates.
+     */
+    void paint(Graphics2D g, int camX, int viewWidth, GraphicsConfiguration config) {
+        if (config != null && config != gc) {
+            // a new device: images made for the old one may not be compatible anymore
+            gc = config;
+            for (int i = 0; i < SLOTS; i++) {
+                slotImage[i] = null;
+                slotValid[i] = false;
+            }
+        }
+        frame++;
+        int first = Math.floorDiv(camX, tileWidth);
+        int last = Math.floorDiv(camX + viewWidth - 1, tileWidth);
+        for (int t = first; t <= last; t++) {
+            g.drawImage(tile(t), t * tileWidth, 0, null);
+        }
+    }
+
+    private BufferedImage tile(int index) {
+        int victim = 0;
+        for (int i = 0; i < SLOTS; i++) {
+            if (slotValid[i] && slotTile[i] == index) {
+                slotUsed[i] = frame;
+                return slotImage[i];
+            }
+            // prefer an empty slot, otherwise the least recently blitted one
+            if (slotValid[victim] && (!slotValid[i] || slotUsed[i] < slotUsed[victim])) {
+                victim = i;
+            }
+        }
+
+        BufferedImage img = slotImage[victim];
+        if (img == null) {
+            img = gc != null
+                    ? gc.createCompatibleImage(tileWidth, tileHeight, Transparency.BITMASK)
+                    : new BufferedImage(tileWidth, tileHeight, BufferedImage.TYPE_INT_ARGB);
+            slotImage[victim] = img;
+        }
+        Graphics2D tg = img.createGraphics();
+        try {
+            // clear whatever a recycled tile held before
+            tg.setComposite(AlphaComposite.Clear);
+            tg.fillRect(0, 0, tileWidth, tileHeight);
+            tg.setComposite(AlphaComposite.SrcOver);
+
+            int x0 = index * tileWidth;
+            tg.translate(-x0, 0);
+            painter.paintRegion(tg, x0, x0 + tileWidth);
+        } finally {
+            tg.dispose();
+        }
+        slotTile[victim] = index;
+        slotValid[victim] = true;
+        slotUsed[victim] = frame;
+        return img;
+    }
+}
@@ -0,0 +1,57 @@
+package games.trial;
+
+/**
+ * Swept AABB test: when, during a straight move, a moving box first touches
+ * a static one. The result lands in the fields so that a caller testing many
+ * boxes per step can reuse one instance.
+ *
+ * Boxes touching along an edge don't overlap (as in {@link Box#intersects}),
+ * so a box resting on a platform can slide along it, and a box standing on
+ * one and moving down hits it at time 0.
+ */
+final class Sweep {
+    /** Fraction of the move, in [0, 1), at which the boxes touch. */
+    double time;
+    /** Whether the contact is on a vertical side (else on the top or bottom). */
+    boolean sideHit;
+
+    /**
+     * Tests the box {@code (x, y, w, h)} moving by {@code (dx, dy)} against
+     * {@code target}. Returns false if they don't touch during the move, or if
+     * they already overlap at its start (that is not a contact a sweep can
+     * resolve).
+     */
+    boolean test(int x, int y, int w, int h, int dx, int dy, Box target) {
+        double entryX, exitX, entryY, exitY;
+        if (dx > 0) {
+            entryX = (target.x - (x + w)) / (double) dx;
+            exitX = (target.x + target.width - x) / (double) dx;
+        } else if (dx < 0) {
+            entryX = (target.x + target.width - x) / (double) dx;
+            exitX = (target.x - (x + w)) / (double) dx;
+        } else if (x < target.x + target.width && target.x < x + w) {
+            entryX = Double.NEGATIVE_INFINITY;
+            exitX = Double.POSITIVE_INFINITY;
+        } else {
+            return false;
+        }
+        if (dy > 0) {
+            entryY = (target.y - (y + h)) / (double) dy;
+            exitY = (target.y + target.height - y) / (double) dy;
+        } else if (dy < 0) {
+            entryY = (target.y + target.height - y) / (double) dy;
+            exitY = (target.y - (y + h)) / (double) dy;
+        } else if (y < target.y + target.height && target.y < y + h) {
+            entryY = Double.NEGATIVE_INFINITY;
+            exitY = Double.POSITIVE_INFINITY;
+        } else {
+            return false;
+        }
+        double entry = Math.max(entryX, entryY);
+        double exit = Math.min(exitX, exitY);
+        if (entry >= exit || entry < 0 || entry >= 1) return false;
+        time = entry;
+        sideHit = entryX > entryY; // a corner counts as top/bottom, so ledges are landed on
+        return true;
+    }
+}
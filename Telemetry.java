@@ -0,0 +1,219 @@
+package games.trial;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Gameplay events of the runs played, for analytics: where players die and
+ * to which enemy, banknotes picked up, levels completed and how fast.
+ *
+ * A {@link GameWorld} given a telemetry records its events into a lock-free
+ * single-producer ring, three longs per event: a record is a few plain array
+ * stores and an ordered write of the tail, with no allocation, locking or
+ * I/O, so the tick thread pays a few nanoseconds. A background thread drains
+ * the ring and appends the events in compressed blocks to a rotating
+ * {@link TelemetryLog}. If the writer ever falls a whole ring behind, new
+ * events are dropped and counted rather than blocking the tick.
+ *
+ * Every event carries the run it belongs to (numbered by this telemetry),
+ * the steps since the run started, the player's position and a detail
+ * that depends on the type. All {@code record} calls must come from one
+ * thread, the one stepping the worlds.
+ */
+final class Telemetry implements AutoCloseable {
+    static final int RUN_START = 1; // detail: level seed (0 for an authored level)
+    static final int COIN = 2;      // detail: tag of the banknote
+    static final int STOMP = 3;     // detail: tag of the enemy
+    static final int LIFE_LOST = 4; // detail: tag of the enemy that hit the player
+    static final int COMPLETED = 5; // detail: score
+    static final int GAME_OVER = 6; // detail: score
+    static final String[] TYPE_NAMES = {"?", "run start", "banknote", "stomp", "life lost", "completed", "game over"};
+
+    static final int DEFAULT_CAPACITY = 1 << 16;      // events buffered between writer passes
+    private static final long FLUSH_NANOS = 100_000_000L; // a partial block waits at most this long
+    private static final int MAX_RUN = 0xFFFFFF;       // run numbers wrap after this
+
+    private final long[] ring;
+    private final int capacity;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong(); // next event to read, written by the writer
+    private final AtomicLong tail = new AtomicLong(); // next event to write, written by the producer
+    // producer side
+    private long produced;
+    private long headSeen;  // last head read, so a record reads the writer's counter only when the ring looks full
+    private long dropped;
+    private int nextRun;
+
+    private final TelemetryLog.Writer log;
+    private final Thread writer;
+    private volatile boolean closing;
+    private volatile IOException failure;
+
+    /** Starts writing to rotating log files in {@code dir} (created if missing). */
+    Telemetry(Path dir, int capacity, long maxFileBytes) throws IOException {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        ring = new long[size * 3];
+        this.capacity = size;
+        mask = size - 1;
+        log = new TelemetryLog.Writer(dir, maxFileBytes);
+        writer = new Thread(this::drainLoop, "telemetry-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    Telemetry(Path dir) throws IOException {
+        this(dir, DEFAULT_CAPACITY, TelemetryLog.DEFAULT_MAX_FILE_BYTES);
+    }
+
+    /** Numbers a new run and records its start; pass the number to the run's other events. */
+    int runStarted(long levelSeed, int x, int y) {
+        int run = nextRun;
+        nextRun = nextRun == MAX_RUN ? 0 : nextRun + 1;
+        record(run, RUN_START, 0, x, y, levelSeed);
+        return run;
+    }
+
+    /** Records an event; never blocks. */
+    void record(int run, int type, int tick, int x, int y, long detail) {
+        long t = produced;
+        if (t - headSeen == capacity) {
+            headSeen = head.get();
+            if (t - headSeen == capacity) {
+                dropped++;
+                return;
+            }
+        }
+        int at = ((int) t & mask) * 3;
+        long[] r = ring;
+        r[at] = (long) (run << 8 | type) << 32 | (tick & 0xFFFFFFFFL);
+        r[at + 1] = (long) x << 32 | (y & 0xFFFFFFFFL);
+        r[at + 2] = detail;
+        produced = t + 1;
+        tail.lazySet(t + 1); // publishes the slot writes
+    }
+
+    /** Events dropped because the ring was full; read it from the recording thread or after {@link #close}. */
+    long dropped() {
+        return dropped;
+    }
+
+    /** Events the writer has taken from the ring so far. */
+    long drained() {
+        return head.get();
+    }
+
+    private void drainLoop() {
+        long lastBlock = System.nanoTime();
+        try {
+            while (true) {
+                boolean last = closing; // read before draining, so nothing recorded before close is left behind
+                int n = drain();
+                long now = System.nanoTime();
+                if (n > 0 && log.pending() == 0) lastBlock = now;
+                if (last) break;
+                if (n == 0) {
+                    if (log.pending() > 0 && now - lastBlock >= FLUSH_NANOS) {
+                        log.flush();
+                        lastBlock = now;
+                    }
+                    LockSupport.parkNanos(FLUSH_NANOS / 10);
+                }
+            }
+            log.flush();
+        } catch (IOException e) {
+            failure = e;
+        }
+    }
+
+    /** Moves every published event into the log's current block. */
+    private int drain() throws IOException {
+        long h = head.get();
+        long t = tail.get();
+        long[] r = ring;
+        for (long i = h; i < t; i++) {
+            int at = ((int) i & mask) * 3;
+            long w0 = r[at], w1 = r[at + 1];
+            int high = (int) (w0 >>> 32);
+            log.add(high & 0xFF, high >>> 8, (int) w0, (int) (w1 >> 32), (int) w1, r[at + 2]);
+            if ((i & 255) == 255) head.lazySet(i + 1); // free slots as we go
+        }
+        head.lazySet(t);
+        return (int) (t - h);
+    }
+
+    /**
+     * Writes out every event recorded so far and closes the log. Events
+     * recorded from now on are not written; calling this from another
+     * thread, say a shutdown hook, only loses those.
+     */
+    @Override
+    public void close() throws IOException {
+        closing = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        log.close();
+        if (failure != null) throw failure;
+    }
+
+    /**
+     * Stress test: records synthetic runs in bursts of a quarter of the ring,
+     * as fast as one thread can, yielding between bursts the way a tick
+     * thread sleeps between frames; then reads the log back and aggregates
+     * it. Prints the cost of a record (timed inside the bursts only), the
+     * events dropped, the log size and the read rate.
+     *
+     * Run with: java -cp <classes> games.trial.Telemetry <dir> [millions of events]
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Paths.get(args.length > 0 ? args[0] : "telemetry-stress");
+        long count = (long) ((args.length > 1 ? Double.parseDouble(args[1]) : 20) * 1_000_000);
+        int[] types = {COIN, COIN, COIN, STOMP, LIFE_LOST};
+        int burst = DEFAULT_CAPACITY / 4;
+
+        Telemetry telemetry = new Telemetry(dir, DEFAULT_CAPACITY, 4L << 20);
+        long recording = 0;
+        long t0 = System.nanoTime();
+        int run = 0, tick = 0;
+        long rnd = 1;
+        for (long i = 0; i < count; ) {
+            long b0 = System.nanoTime();
+            for (long end = Math.min(count, i + burst); i < end; i++) {
+                if (tick == 0) run = telemetry.runStarted(i, GameWorld.SPAWN_X, 288);
+                rnd ^= rnd << 13;
+                rnd ^= rnd >>> 7;
+                rnd ^= rnd << 17;
+                tick += 1 + (int) ((rnd >>> 1) % 40);
+                telemetry.record(run, types[(int) (i % types.length)], tick, GameWorld.SPAWN_X + tick * 3,
+                        250 + (tick & 63), 64 + (i & 31));
+                if (tick > 3000) {
+                    telemetry.record(run, (i & 1) == 0 ? COMPLETED : GAME_OVER, tick, 10_100, 288, 1500);
+                    tick = 0;
+                }
+            }
+            recording += System.nanoTime() - b0;
+            while (telemetry.produced - telemetry.drained() > DEFAULT_CAPACITY / 2) Thread.yield();
+        }
+        long t1 = System.nanoTime();
+        telemetry.close();
+        long t2 = System.nanoTime();
+        System.out.printf("%d events in %.2f s: %.1f ns per record, %d dropped; writer done %.3f s after the last%n",
+                telemetry.produced + telemetry.dropped(), (t1 - t0) / 1e9, recording / (double) telemetry.produced,
+                telemetry.dropped(), (t2 - t1) / 1e9);
+
+        TelemetryLog.Summary summary = new TelemetryLog.Summary();
+        long t3 = System.nanoTime();
+        long events = TelemetryLog.read(dir, summary);
+        long t4 = System.nanoTime();
+        System.out.printf("read %d events from %d files (%.1f MB, %.1f bytes an event) in %.2f s: %.1f M events/s%n",
+                events, TelemetryLog.files(dir).size(), TelemetryLog.bytes(dir) / 1e6,
+                TelemetryLog.bytes(dir) / (double) Math.max(1, events), (t4 - t3) / 1e9, events / ((t4 - t3) / 1e9) / 1e6);
+        summary.print(System.out);
+    }
+}
@@ -0,0 +1,431 @@
+package games.trial;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The files {@link Telemetry} appends its events to, and the reader that
+ * aggregates them.
+ *
+ * A directory holds numbered files, {@code telemetry-000000.smt} and up; a
+ * writer never touches an existing file, it starts the next number and moves
+ * on to another once the current one passes its size limit. A file is a
+ * header (magic "SMTL", version) and then blocks of up to
+ * {@link #BLOCK_EVENTS} events, each a header (magic "SMTB", event count,
+ * payload length) and a payload of columns: every event's type as a byte,
+ * then run, tick, x and y as zigzag varint deltas from the previous event
+ * (starting from 0 in each block), then the detail as a zigzag varint. Events
+ * of a run are close together in all of these, so an event takes about 8
+ * bytes. A block is written whole, so a file cut short by a crash only loses
+ * its last, incomplete block, which the reader skips.
+ */
+final class TelemetryLog {
+    private static final int FILE_MAGIC = 0x534D544C; // "SMTL"
+    private static final int VERSION = 1;
+    private static final int BLOCK_MAGIC = 0x534D5442; // "SMTB"
+    private static final int FILE_HEADER = 8;
+    private static final int BLOCK_HEADER = 12;
+    static final int BLOCK_EVENTS = 4096;
+    static final long DEFAULT_MAX_FILE_BYTES = 16L << 20;
+    private static final int MAX_EVENT_BYTES = 1 + 4 * 5 + 10; // type, four int varints, a long varint
+    private static final String PREFIX = "telemetry-";
+    private static final String SUFFIX = ".smt";
+
+    private TelemetryLog() {
+    }
+
+    /** Appends blocks of events to rotating files; used by one thread. */
+    static final class Writer implements AutoCloseable {
+        private final Path dir;
+        private final long maxFileBytes;
+        private int nextFile;
+        private FileChannel out;
+        private long fileBytes;
+        private long bytesWritten;
+        private long eventsWritten;
+        private int files;
+        // the block being filled, one array per column
+        private final byte[] type = new byte[BLOCK_EVENTS];
+        private final int[] run = new int[BLOCK_EVENTS];
+        private final int[] tick = new int[BLOCK_EVENTS];
+        private final int[] x = new int[BLOCK_EVENTS];
+        private final int[] y = new int[BLOCK_EVENTS];
+        private final long[] detail = new long[BLOCK_EVENTS];
+        private int count;
+        private final ByteBuffer block = ByteBuffer.allocateDirect(BLOCK_HEADER + BLOCK_EVENTS * MAX_EVENT_BYTES);
+
+        /** Writes to {@code dir}, created if missing, after any files already there. */
+        Writer(Path dir, long maxFileBytes) throws IOException {
+            if (maxFileBytes < block.capacity()) throw new IllegalArgumentException("file limit " + maxFileBytes);
+            Files.createDirectories(dir);
+            this.dir = dir;
+            this.maxFileBytes = maxFileBytes;
+            List<Path> existing = files(dir);
+            nextFile = existing.isEmpty() ? 0 : number(existing.get(existing.size() - 1)) + 1;
+        }
+
+        void add(int type, int run, int tick, int x, int y, long detail) throws IOException {
+            int i = count;
+            this.type[i] = (byte) type;
+            this.run[i] = run;
+            this.tick[i] = tick;
+            this.x[i] = x;
+            this.y[i] = y;
+            this.detail[i] = detail;
+            count = i + 1;
+            if (count == BLOCK_EVENTS) flush();
+        }
+
+        /** Events added since the last block was written. */
+        int pending() {
+            return count;
+        }
+
+        /** Writes the events added so far as a block, if there are any. */
+        void flush() throws IOException {
+            if (count == 0) return;
+            ByteBuffer b = block;
+            b.clear();
+            b.position(BLOCK_HEADER);
+            for (int i = 0; i < count; i++) b.put(type[i]);
+            putDeltas(b, run, count);
+            putDeltas(b, tick, count);
+            putDeltas(b, x, count);
+            putDeltas(b, y, count);
+            for (int i = 0; i < count; i++) putSignedLong(b, detail[i]);
+            b.putInt(0, BLOCK_MAGIC).putInt(4, count).putInt(8, b.position() - BLOCK_HEADER);
+            b.flip();
+            if (out == null || fileBytes + b.remaining() > maxFileBytes) rotate();
+            while (b.hasRemaining()) out.write(b);
+            fileBytes += b.limit();
+            bytesWritten += b.limit();
+            eventsWritten += count;
+            count = 0;
+        }
+
+        private void rotate() throws IOException {
+            if (out != null) out.close();
+            out = FileChannel.open(dir.resolve(String.format("%s%06d%s", PREFIX, nextFile++, SUFFIX)),
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW);
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER).putInt(FILE_MAGIC).putInt(VERSION).flip();
+            while (header.hasRemaining()) out.write(header);
+            fileBytes = FILE_HEADER;
+            bytesWritten += FILE_HEADER;
+            files++;
+        }
+
+        long eventsWritten() {
+            return eventsWritten;
+        }
+
+        long bytesWritten() {
+            return bytesWritten;
+        }
+
+        /** Files opened by this writer. */
+        int filesOpened() {
+            return files;
+        }
+
+        /** Writes the pending events and closes the current file. */
+        @Override
+        public void close() throws IOException {
+            flush();
+            if (out != null) out.close();
+            out = null;
+        }
+    }
+
+    private static void putDeltas(ByteBuffer b, int[] column, int count) {
+        int prev = 0;
+        for (int i = 0; i < count; i++) {
+            NetProtocol.putSigned(b, column[i] - prev);
+            prev = column[i];
+        }
+    }
+
+    private static void getDeltas(ByteBuffer b, int[] column, int count) {
+        int prev = 0;
+        for (int i = 0; i < count; i++) {
+            prev += NetProtocol.getSigned(b);
+            column[i] = prev;
+        }
+    }
+
+    private static void putSignedLong(ByteBuffer out, long v) {
+        v = v << 1 ^ v >> 63;
+        while ((v & ~0x7FL) != 0) {
+            out.put((byte) (v & 0x7F | 0x80));
+            v >>>= 7;
+        }
+        out.put((byte) v);
+    }
+
+    private static long getSignedLong(ByteBuffer in) {
+        long v = 0;
+        for (int shift = 0; shift < 70; shift += 7) {
+            long b = in.get();
+            v |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return v >>> 1 ^ -(v & 1);
+        }
+        throw new IllegalArgumentException("malformed varint");
+    }
+
+    /** Receives the events of a log in the order they were recorded. */
+    interface Visitor {
+        void event(int type, int run, int tick, int x, int y, long detail);
+    }
+
+    /** The log files in {@code dir}, oldest first. */
+    static List<Path> files(Path dir) throws IOException {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(dir)) return files;
+        try (DirectoryStream<Path> ds = Files.newDirectoryStream(dir, PREFIX + "*" + SUFFIX)) {
+            for (Path p : ds) {
+                if (number(p) >= 0) files.add(p);
+            }
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    private static int number(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Integer.parseInt(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /** Total size of the log files in {@code dir}. */
+    static long bytes(Path dir) throws IOException {
+        long total = 0;
+        for (Path p : files(dir)) total += Files.size(p);
+        return total;
+    }
+
+    /**
+     * Reads every event in {@code dir}, file by file through a memory mapping
+     * and block by block, column-wise; returns how many there were. A
+     * truncated last block is skipped.
+     */
+    static long read(Path dir, Visitor visitor) throws IOException {
+        byte[] type = new byte[BLOCK_EVENTS];
+        int[] run = new int[BLOCK_EVENTS];
+        int[] tick = new int[BLOCK_EVENTS];
+        int[] x = new int[BLOCK_EVENTS];
+        int[] y = new int[BLOCK_EVENTS];
+        long[] detail = new long[BLOCK_EVENTS];
+        long events = 0;
+        for (Path file : files(dir)) {
+            ByteBuffer in;
+            try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ)) {
+                if (ch.size() > Integer.MAX_VALUE) throw new IOException(file + ": too large for a telemetry file");
+                in = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+            }
+            if (in.remaining() < FILE_HEADER || in.getInt() != FILE_MAGIC) throw new IOException(file + ": not a telemetry file");
+            int version = in.getInt();
+            if (version != VERSION) throw new IOException(file + ": unsupported telemetry version " + version);
+            while (in.remaining() >= BLOCK_HEADER) {
+                int at = in.position();
+                int count = in.getInt(at + 4);
+                int length = in.getInt(at + 8);
+                if (in.getInt(at) != BLOCK_MAGIC || count < 1 || count > BLOCK_EVENTS || length < 0) {
+                    throw new IOException(file + ": corrupt block at byte " + at);
+                }
+                if (length > in.remaining() - BLOCK_HEADER) break; // cut short while being written
+                ByteBuffer payload = in.position(at + BLOCK_HEADER).slice().limit(length);
+                try {
+                    payload.get(type, 0, count);
+                    getDeltas(payload, run, count);
+                    getDeltas(payload, tick, count);
+                    getDeltas(payload, x, count);
+                    getDeltas(payload, y, count);
+                    for (int i = 0; i < count; i++) detail[i] = getSignedLong(payload);
+                } catch (RuntimeException e) { // a malformed varint, or columns running past the payload
+                    throw new IOException(file + ": corrupt block at byte " + at, e);
+                }
+                if (payload.hasRemaining()) throw new IOException(file + ": corrupt block at byte " + at);
+                in.position(at + BLOCK_HEADER + length);
+                for (int i = 0; i < count; i++) visitor.event(type[i], run[i], tick[i], x[i], y[i], detail[i]);
+                events += count;
+            }
+        }
+        return events;
+    }
+
+    /**
+     * What the runs in a log add up to: how they ended, where and to what
+     * players lose lives, how many banknotes they pick up, and how long a
+     * completed run takes.
+     */
+    static final class Summary implements Visitor {
+        static final int METERS_PER_BUCKET = 5;
+        private static final int PX_PER_BUCKET = METERS_PER_BUCKET * 100; // 100 px to the meter, as in GameWorld
+        private static final int RUN_SLOTS = 1 << 24; // run numbers wrap at this
+
+        long events;
+        long runs;
+        long completed;
+        long gameOvers;
+        long livesLost;
+        long coins;
+        long stomps;
+        long playSteps; // steps played in all runs, up to their end or their last event
+        final Histogram completionSteps = new Histogram();
+        long fastestSteps = Long.MAX_VALUE;
+        private long[] deathsByBucket = new long[24];
+        private long[] deathsByEnemy = new long[1024]; // by tag: chunk << 6 | ordinal
+        // per run slot: last tick seen, and whether it is still going
+        private int[] lastTick = new int[1024];
+        private boolean[] open = new boolean[1024];
+
+        @Override
+        public void event(int type, int run, int tick, int x, int y, long detail) {
+            events++;
+            if (run < 0 || run >= RUN_SLOTS) return;
+            if (run >= open.length) {
+                int n = Math.min(RUN_SLOTS, Integer.highestOneBit(run) << 1);
+                open = Arrays.copyOf(open, n);
+                lastTick = Arrays.copyOf(lastTick, n);
+            }
+            if (type == Telemetry.RUN_START) {
+                end(run); // a run number coming round again
+                runs++;
+                open[run] = true;
+                lastTick[run] = 0;
+                return;
+            }
+            if (!open[run]) return; // recorded after the run ended (a second game over in one step)
+            lastTick[run] = tick;
+            switch (type) {
+                case Telemetry.COIN -> coins++;
+                case Telemetry.STOMP -> stomps++;
+                case Telemetry.LIFE_LOST -> {
+                    livesLost++;
+                    int bucket = Math.max(0, x - GameWorld.SPAWN_X) / PX_PER_BUCKET;
+                    if (bucket >= deathsByBucket.length) deathsByBucket = Arrays.copyOf(deathsByBucket, bucket + 1);
+                    deathsByBucket[bucket]++;
+                    if (detail >= 0 && detail < 1 << 26) {
+                        if (detail >= deathsByEnemy.length) {
+                            deathsByEnemy = Arrays.copyOf(deathsByEnemy, Integer.highestOneBit((int) detail) << 1);
+                        }
+                        deathsByEnemy[(int) detail]++;
+                    }
+                }
+                case Telemetry.COMPLETED -> {
+                    completed++;
+                    completionSteps.record(tick);
+                    fastestSteps = Math.min(fastestSteps, tick);
+                    end(run);
+                }
+                case Telemetry.GAME_OVER -> {
+                    gameOvers++;
+                    end(run);
+                }
+                default -> { }
+            }
+        }
+
+        private void end(int run) {
+            if (!open[run]) return;
+            open[run] = false;
+            playSteps += lastTick[run];
+        }
+
+        /** Lives lost with the player {@code [5b, 5b + 5)} meters past the spawn point. */
+        long deathsAt(int bucket) {
+            return bucket < deathsByBucket.length ? deathsByBucket[bucket] : 0;
+        }
+
+        /** Lives lost to the enemy tagged {@code tag}. */
+        long deathsTo(int tag) {
+            return tag >= 0 && tag < deathsByEnemy.length ? deathsByEnemy[tag] : 0;
+        }
+
+        /** Tags of the {@code n} enemies that took the most lives, most first. */
+        int[] topKillers(int n) {
+            int[] top = new int[0];
+            for (int tag = 0; tag < deathsByEnemy.length; tag++) {
+                if (deathsByEnemy[tag] == 0) continue;
+                int at = top.length;
+                while (at > 0 && deathsByEnemy[top[at - 1]] < deathsByEnemy[tag]) at--;
+                if (at >= n) continue;
+                int[] t = new int[Math.min(n, top.length + 1)];
+                System.arraycopy(top, 0, t, 0, at);
+                t[at] = tag;
+                System.arraycopy(top, at, t, at + 1, t.length - at - 1);
+                top = t;
+            }
+            return top;
+        }
+
+        /** Steps played, counting runs still going (or cut off) up to their last event. */
+        long stepsPlayed() {
+            long steps = playSteps;
+            for (int r = 0; r < open.length; r++) {
+                if (open[r]) steps += lastTick[r];
+            }
+            return steps;
+        }
+
+        void print(PrintStream out) {
+            double stepSeconds = GameLoop.STEP_NANOS / 1e9;
+            long steps = stepsPlayed();
+            out.printf("%d events, %d runs: %d completed, %d game over, %d unfinished%n", events, runs, completed,
+                    gameOvers, runs - completed - gameOvers);
+            out.printf("%d banknotes (%.2f a run, %.1f a minute played), %d stomps, %d lives lost%n", coins,
+                    runs == 0 ? 0.0 : coins / (double) runs, steps == 0 ? 0.0 : coins / (steps * stepSeconds / 60),
+                    stomps, livesLost);
+            if (completed > 0) {
+                out.printf("time to complete: p50 %.1f s, p90 %.1f s, best %.1f s%n",
+                        completionSteps.percentile(50) * stepSeconds, completionSteps.percentile(90) * stepSeconds,
+                        fastestSteps * stepSeconds);
+            }
+            if (livesLost > 0) {
+                out.println("lives lost by distance from the spawn point:");
+                for (int b = 0; b < deathsByBucket.length; b++) {
+                    if (deathsByBucket[b] == 0) continue;
+                    out.printf("  %3d-%3d m %8d  %5.1f%%%n", b * METERS_PER_BUCKET, (b + 1) * METERS_PER_BUCKET,
+                            deathsByBucket[b], deathsByBucket[b] * 100.0 / livesLost);
+                }
+                out.println("enemies that took the most lives:");
+                for (int tag : topKillers(5)) {
+                    out.printf("  chunk %d enemy %d %8d%n", tag >> 6, tag & 63, deathsByEnemy[tag]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Prints the summary of a telemetry directory.
+     *
+     * Run with: java -cp <classes> games.trial.TelemetryLog <dir>
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: TelemetryLog <dir>");
+            System.exit(2);
+        }
+        Path dir = Paths.get(args[0]);
+        Summary summary = new Summary();
+        long t0 = System.nanoTime();
+        long events = read(dir, summary);
+        long t1 = System.nanoTime();
+        System.out.printf("%s: %d files, %.1f MB, read in %.2f s (%.1f M events/s)%n", dir, files(dir).size(),
+                bytes(dir) / 1e6, (t1 - t0) / 1e9, events / Math.max(1e-9, (t1 - t0) / 1e9) / 1e6);
+        summary.print(System.out);
+    }
+}
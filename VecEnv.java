@@ -0,0 +1,177 @@
+package games.trial;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * A batch of {@link GameEnv}s stepped together, for agents that act on many
+ * episodes at once.
+ *
+ * One {@link #step} call applies one action per environment and writes the
+ * results into preallocated flat arrays: the observations back to back
+ * ({@link GameEnv#OBSERVATION_SIZE} floats each), the rewards and the done
+ * flags. Nothing is allocated per step, so the caller can hand the arrays to
+ * a learner as they are.
+ *
+ * An environment whose episode ended is reset right away on its next seed,
+ * and the observation written for it is the new episode's first one; the
+ * last observation of the finished episode goes to
+ * {@link #terminalObservations}. Environment {@code i} plays seeds
+ * {@code baseSeed + i}, {@code baseSeed + i + count}, ..., so a batch is
+ * reproducible whatever the thread count.
+ *
+ * Environments share no state, so {@link #step(int[], ForkJoinPool)} splits
+ * large batches into slices stepped in parallel.
+ */
+final class VecEnv {
+    static final int PARALLEL_THRESHOLD = 256; // fewer environments than this aren't worth forking for
+    private static final int LEAF_ENVS = 64;
+
+    final int count;
+    /** {@code count * OBSERVATION_SIZE} floats: environment {@code i}'s observation starts at {@code i * OBSERVATION_SIZE}. */
+    final float[] observations;
+    final float[] rewards;
+    /** Whether the last step ended the environment's episode (it has been reset since). */
+    final boolean[] dones;
+    /** Whether the episode that ended was cut off by the step limit. */
+    final boolean[] truncated;
+    /** Last observation of each episode that ended in the last step; stale for the others. */
+    final float[] terminalObservations;
+
+    private final GameEnv[] envs;
+    private final long baseSeed;
+    private final long[] episodes; // episodes started, per environment
+
+    VecEnv(int count, long baseSeed, int levelLength, int maxEpisodeSteps) {
+        this.count = count;
+        this.baseSeed = baseSeed;
+        envs = new GameEnv[count];
+        for (int i = 0; i < count; i++) envs[i] = new GameEnv(levelLength, maxEpisodeSteps);
+        observations = new float[count * GameEnv.OBSERVATION_SIZE];
+        terminalObservations = new float[count * GameEnv.OBSERVATION_SIZE];
+        rewards = new float[count];
+        dones = new boolean[count];
+        truncated = new boolean[count];
+        episodes = new long[count];
+    }
+
+    VecEnv(int count, long baseSeed) {
+        this(count, baseSeed, GameWorld.DEFAULT_LEVEL_LENGTH, GameEnv.DEFAULT_MAX_EPISODE_STEPS);
+    }
+
+    GameEnv env(int i) {
+        return envs[i];
+    }
+
+    /** Starts every environment over on its first seed and writes the first observations. */
+    void reset() {
+        for (int i = 0; i < count; i++) {
+            episodes[i] = 0;
+            startEpisode(i);
+            rewards[i] = 0;
+            dones[i] = false;
+            truncated[i] = false;
+        }
+    }
+
+    private void startEpisode(int i) {
+        envs[i].reset(baseSeed + i + episodes[i] * count, observations, i * GameEnv.OBSERVATION_SIZE);
+        episodes[i]++;
+    }
+
+    /** Steps every environment with {@code actions[i]}, on the calling thread. */
+    void step(int[] actions) {
+        step(actions, 0, count);
+    }
+
+    /** As {@link #step(int[])}, in parallel on {@code pool} when there are many environments. */
+    void step(int[] actions, ForkJoinPool pool) {
+        if (count < PARALLEL_THRESHOLD) {
+            step(actions);
+        } else {
+            pool.invoke(new Slice(actions, 0, count));
+        }
+    }
+
+    private void step(int[] actions, int from, int to) {
+        for (int i = from; i < to; i++) {
+            GameEnv env = envs[i];
+            int at = i * GameEnv.OBSERVATION_SIZE;
+            rewards[i] = (float) env.step(actions[i], observations, at);
+            dones[i] = env.isDone();
+            truncated[i] = env.isTruncated();
+            if (dones[i]) {
+                System.arraycopy(observations, at, terminalObservations, at, GameEnv.OBSERVATION_SIZE);
+                startEpisode(i);
+            }
+        }
+    }
+
+    private final class Slice extends RecursiveAction {
+        private final int[] actions;
+        private final int from, to;
+
+        Slice(int[] actions, int from, int to) {
+            this.actions = actions;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_ENVS) {
+                step(actions, from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new Slice(actions, from, mid), new Slice(actions, mid, to));
+        }
+    }
+
+    /**
+     * Throughput benchmark: steps a batch with random actions on 1, 2, 4, ...
+     * up to all cores and prints env-steps per second and speed-up.
+     *
+     * Run with: java -cp <classes> games.trial.VecEnv [environments] [seconds per run]
+     */
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        double seconds = args.length > 1 ? Double.parseDouble(args[1]) : 3.0;
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        // a fixed stream of actions, mostly running right, so episodes make progress
+        int[][] actionStream = new int[64][count];
+        java.util.Random r = new java.util.Random(1);
+        for (int[] actions : actionStream) {
+            for (int i = 0; i < count; i++) {
+                actions[i] = r.nextInt(4) == 0 ? r.nextInt(GameEnv.ACTIONS) : InputState.RIGHT | (r.nextInt(6) == 0 ? InputState.JUMP : 0);
+            }
+        }
+
+        VecEnv vec = new VecEnv(count, 1);
+        vec.reset();
+        ForkJoinPool warm = new ForkJoinPool(cores);
+        long warmUntil = System.nanoTime() + 2_000_000_000L;
+        for (int s = 0; System.nanoTime() < warmUntil; s++) vec.step(actionStream[s % actionStream.length], warm);
+        warm.shutdown();
+
+        System.out.printf("%d environments%n%8s %10s %14s %9s%n", count, "threads", "seconds", "env-steps/s", "speed-up");
+        double base = 0;
+        for (int threads = 1; ; threads = Math.min(cores, threads * 2)) {
+            ForkJoinPool pool = new ForkJoinPool(threads);
+            long steps = 0;
+            long t0 = System.nanoTime();
+            long deadline = t0 + (long) (seconds * 1e9);
+            for (int s = 0; System.nanoTime() < deadline; s++) {
+                vec.step(actionStream[s % actionStream.length], pool);
+                steps += count;
+            }
+            double elapsed = (System.nanoTime() - t0) / 1e9;
+            pool.shutdown();
+            double rate = steps / elapsed;
+            if (threads == 1) base = rate;
+            System.out.printf("%8d %10.2f %14.0f %8.2fx%n", threads, elapsed, rate, rate / base);
+            if (threads == cores) break;
+        }
+    }
+}
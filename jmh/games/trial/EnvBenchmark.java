@@ -0,0 +1,57 @@
+package games.trial;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link VecEnv#step} of a batch of environments, observations included,
+ * on one thread and in parallel. Env-steps per second are
+ * {@code envs / score}; episodes that end are reset inside the measured
+ * steps, as they would be in training.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EnvBenchmark {
+    @Param({"1", "256", "4096"})
+    int envs;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    private VecEnv vec;
+    private int[][] actions;
+    private int next;
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        vec = new VecEnv(envs, 42);
+        vec.reset();
+        // mostly running right with the odd jump, so episodes make progress instead of idling
+        Random r = new Random(7);
+        actions = new int[64][envs];
+        for (int[] batch : actions) {
+            for (int i = 0; i < envs; i++) {
+                batch[i] = r.nextInt(4) == 0 ? r.nextInt(GameEnv.ACTIONS) : InputState.RIGHT | (r.nextInt(6) == 0 ? InputState.JUMP : 0);
+            }
+        }
+    }
+
+    @Benchmark
+    public VecEnv step() {
+        int[] batch = actions[next++ & 63];
+        if (parallel) {
+            vec.step(batch, pool);
+        } else {
+            vec.step(batch);
+        }
+        return vec;
+    }
+}
@@ -0,0 +1,59 @@
+package games.trial;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless rendering of one frame into an offscreen {@link BufferedImage},
+ * with the camera moving along the level so static tiles keep being recycled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class FrameRenderBenchmark {
+    private static final Color SKY = new Color(135, 206, 235);
+
+    @Param({"10000", "100000"})
+    int levelLength;
+
+    @Param({"0.25", "1.0"})
+    double enemyDensity;
+
+    private GameWorld world;
+    private final SceneRenderer renderer = new SceneRenderer();
+    private final InputState right = new InputState(InputState.RIGHT);
+    private BufferedImage frame;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = new GameWorld(42, levelLength, enemyDensity);
+        frame = new BufferedImage(GameWorld.WIDTH, GameWorld.HEIGHT, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /** Moves the world on between frames; a frame costs far more than the per-invocation overhead. */
+    @Setup(Level.Invocation)
+    public void advance() {
+        world.step(right);
+        if (!world.isRunning()) world.restart();
+    }
+
+    @Benchmark
+    public BufferedImage render() {
+        Graphics2D g = frame.createGraphics();
+        try {
+            g.setColor(SKY);
+            g.fillRect(0, 0, GameWorld.WIDTH, GameWorld.HEIGHT);
+            renderer.render(world, g, 1.0, null);
+        } finally {
+            g.dispose();
+        }
+        return frame;
+    }
+}
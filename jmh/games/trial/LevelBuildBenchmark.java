@@ -0,0 +1,36 @@
+package games.trial;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Level generation: {@link GameWorld#restart} builds a new level (platforms,
+ * banknotes, enemies and their grids) from the world's random sequence.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevelBuildBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int levelLength;
+
+    @Param({"0.25", "1.0"})
+    double enemyDensity;
+
+    private GameWorld world;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = new GameWorld(42, levelLength, enemyDensity);
+    }
+
+    @Benchmark
+    public GameWorld build() {
+        world.restart();
+        return world;
+    }
+}
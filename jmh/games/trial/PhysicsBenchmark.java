@@ -0,0 +1,60 @@
+package games.trial;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link PhysicsStage} step of many bodies over the resident platforms of
+ * a level, on one thread and in parallel. Bodies start scattered above the
+ * platforms with random velocities and are respawned every iteration, so the
+ * measurement mixes falls, landings and bodies walking on ground.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PhysicsBenchmark {
+    private static final int SPAN = 2 * LevelStreamer.CHUNK_WIDTH; // resident at the start of a run
+
+    @Param({"10", "1000", "100000"})
+    int bodies;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    private PhysicsStage physics;
+    private Bodies set;
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        physics = new GameWorld(42, GameWorld.DEFAULT_LEVEL_LENGTH).physics();
+        set = new Bodies(bodies);
+    }
+
+    @Setup(Level.Iteration)
+    public void spawn() {
+        Random r = new Random(7);
+        set.clear();
+        for (int i = 0; i < bodies; i++) {
+            int id = set.add(r.nextInt(SPAN), -r.nextInt(400), 16 + r.nextInt(16), 16 + r.nextInt(32));
+            set.vx[id] = r.nextDouble() * 6 - 3;
+            set.vy[id] = r.nextDouble() * 20 - 10;
+        }
+    }
+
+    @Benchmark
+    public Bodies step() {
+        if (parallel) {
+            physics.step(set, pool);
+        } else {
+            physics.step(set);
+        }
+        return set;
+    }
+}
@@ -0,0 +1,42 @@
+package games.trial;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The swept platform collision pass alone: the player falls from above the
+ * platforms onto successive points of the resident chunks, so that every
+ * platform neighbourhood gets visited and most moves end in a landing. Only
+ * nearby chunks are ever resident, so the level length doesn't matter here.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PlatformCollisionBenchmark {
+    private static final int PROBE_STEP = 37; // px between probes; not a divisor of the platform spacing
+    private static final int PROBE_SPAN = 2 * LevelStreamer.CHUNK_WIDTH; // resident at the start of a run
+    private static final int FALL = 300; // px per move: from above the highest platform into the ground
+
+    private GameWorld world;
+    private int probeX;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = new GameWorld(42, GameWorld.DEFAULT_LEVEL_LENGTH);
+    }
+
+    @Benchmark
+    public Box resolve() {
+        Box player = world.player();
+        probeX += PROBE_STEP;
+        if (probeX >= PROBE_SPAN) probeX = 0;
+        player.x = probeX;
+        player.y = GameWorld.HEIGHT - 40 - player.height - FALL + 4;
+        world.sweepPlayer(3, FALL);
+        return player;
+    }
+}
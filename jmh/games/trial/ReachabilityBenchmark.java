@@ -0,0 +1,28 @@
+package games.trial;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reachability analysis of one generated level, generation included, on a
+ * new seed each call; seeds per second are {@code 1 / score}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReachabilityBenchmark {
+    @Param({"10000", "40000"})
+    int levelLength;
+
+    private final ReachabilityAnalyzer analyzer = new ReachabilityAnalyzer(JumpEnvelope.DEFAULT);
+    private long seed;
+
+    @Benchmark
+    public ReachabilityAnalyzer.Report analyze() {
+        return analyzer.analyze(seed++, levelLength);
+    }
+}
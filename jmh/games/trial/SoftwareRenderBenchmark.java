@@ -0,0 +1,51 @@
+package games.trial;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One frame drawn by the {@link SoftwareRenderer} into its framebuffer, on
+ * the calling thread and in scanline bands on the common pool, with the
+ * camera moving along the level as in {@link FrameRenderBenchmark}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SoftwareRenderBenchmark {
+    @Param({"0.25", "1.0"})
+    double enemyDensity;
+
+    @Param({"false", "true"})
+    boolean parallel;
+
+    private GameWorld world;
+    private final SoftwareRenderer renderer = new SoftwareRenderer();
+    private final InputState right = new InputState(InputState.RIGHT);
+    private final ForkJoinPool pool = ForkJoinPool.commonPool();
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = new GameWorld(42, GameWorld.DEFAULT_LEVEL_LENGTH, enemyDensity);
+    }
+
+    @Setup(Level.Invocation)
+    public void advance() {
+        world.step(right);
+        if (!world.isRunning()) world.restart();
+    }
+
+    @Benchmark
+    public int[] render() {
+        if (parallel) {
+            renderer.render(world, 1.0, pool);
+        } else {
+            renderer.render(world, 1.0);
+        }
+        return renderer.pixels();
+    }
+}
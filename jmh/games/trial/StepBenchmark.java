@@ -0,0 +1,52 @@
+package games.trial;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One {@link GameWorld#step} with the player played by the
+ * {@link HeadlessRunner} bot (run right, jump on a rhythm), at several level
+ * lengths and enemy densities, so the steps measured stream chunks, collide
+ * with platforms, pick up banknotes and meet enemies as in real play. When a
+ * run ends the world is restored to a snapshot of its start, which costs
+ * far less than generating a level, so the same run is replayed. With the
+ * broad phase, and only the enemies near the view stepped (the rest catch up
+ * when they come back), this should stay flat as the level grows; a higher
+ * enemy density only adds the few more enemies near the player.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    int levelLength;
+
+    @Param({"0.25", "1.0"})
+    double enemyDensity;
+
+    private GameWorld world;
+    private GameWorld.Snapshot start;
+    private final InputState input = new InputState();
+    private long tick;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        world = new GameWorld(42, levelLength, enemyDensity);
+        start = world.snapshot();
+    }
+
+    @Benchmark
+    public GameWorld step() {
+        input.setBits(HeadlessRunner.botInput(tick++));
+        world.step(input);
+        if (!world.isRunning()) {
+            world.restore(start);
+            tick = 0;
+        }
+        return world;
+    }
+}
@@ -0,0 +1,47 @@
+package games.trial;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What {@link Telemetry} costs the tick thread: one {@link Telemetry#record},
+ * with the writer thread draining the ring to a temporary directory. When
+ * the writer can't keep up (benchmark and writer sharing a core) records are
+ * dropped, which is the same few stores short.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TelemetryBenchmark {
+    private Path dir;
+    private Telemetry telemetry;
+    private int run;
+    private int tick;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        dir = Files.createTempDirectory("telemetry-bench");
+        telemetry = new Telemetry(dir);
+        run = telemetry.runStarted(42, GameWorld.SPAWN_X, 288);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        telemetry.close();
+        for (Path p : TelemetryLog.files(dir)) Files.delete(p);
+        Files.delete(dir);
+    }
+
+    @Benchmark
+    public void record() {
+        int t = ++tick;
+        telemetry.record(run, Telemetry.COIN, t, GameWorld.SPAWN_X + t, 288, t & 63);
+    }
+}